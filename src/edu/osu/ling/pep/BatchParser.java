@@ -0,0 +1,290 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * Parses many strings in parallel with a single {@link EarleyParser Earley
+ * parser}, returning their parses in the order the strings were given.
+ * <p>
+ * A batch parser hands each string to an {@link Executor executor} as a
+ * separate task, so any executor can be used: a fixed pool of threads, a
+ * fork/join pool, or one that starts a thread for every task. Since an
+ * Earley parser can be shared by any number of threads, every task parses
+ * with the same parser, and so the same
+ * {@link Grammar#compile() compiled grammar}. Each thread that runs tasks
+ * keeps a {@link ParseWorkspace workspace} of its own.
+ * <p>
+ * The parses can be had {@link #parseAll(Iterable, Category) all at once},
+ * or {@link #iterator(Iterable, Category) streamed} as they are done. In
+ * either case, at most a fixed number of strings are handed to the executor
+ * ahead of the parse that is to be returned next, so that a large corpus
+ * can be read lazily without all of its strings and parses being held in
+ * memory at the same time.
+ * <p>
+ * Exceptions thrown while parsing a string do not stop the batch. Instead,
+ * the parse returned for the string has the {@link Status#ERROR error}
+ * status, and its {@link Parse#getError() error} is the exception thrown,
+ * or a {@link PepException} caused by it if it was a runtime exception.
+ * The parser's listener, if it has one, is notified from the threads doing
+ * the parsing, so it must be prepared for events from more than one thread
+ * at once.
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ * @since 0.5
+ * @see EarleyParser#parse(Iterable, Category, ParseWorkspace)
+ */
+public class BatchParser {
+	static final int DEFAULT_WINDOW = 256;
+	
+	EarleyParser parser;
+	Executor executor;
+	int window;
+	
+	private ThreadLocal<ParseWorkspace> workspaces
+		= new ThreadLocal<ParseWorkspace>() {
+			@Override
+			protected ParseWorkspace initialValue() {
+				return new ParseWorkspace();
+			}
+		};
+	
+	/**
+	 * Creates a new batch parser that parses with the specified parser on
+	 * the specified executor, handing it a default number of strings ahead.
+	 * @see #BatchParser(EarleyParser, Executor, int)
+	 */
+	public BatchParser(EarleyParser parser, Executor executor) {
+		this(parser, executor, BatchParser.DEFAULT_WINDOW);
+	}
+	
+	/**
+	 * Creates a new batch parser.
+	 * @param parser The parser to parse every string with.
+	 * @param executor The executor to run the tasks parsing each string. The
+	 * batch parser does not shut the executor down.
+	 * @param window The greatest number of strings to hand to the executor
+	 * ahead of the one whose parse is to be returned next.
+	 * @throws IllegalArgumentException If <code>parser</code> or
+	 * <code>executor</code> is <code>null</code>, or if <code>window</code>
+	 * is less than <code>1</code>.
+	 */
+	public BatchParser(EarleyParser parser, Executor executor, int window) {
+		if(parser == null) {
+			throw new IllegalArgumentException("null parser");
+		}
+		if(executor == null) {
+			throw new IllegalArgumentException("null executor");
+		}
+		if(window < 1) {
+			throw new IllegalArgumentException("invalid window: " + window);
+		}
+		
+		this.parser = parser;
+		this.executor = executor;
+		this.window = window;
+	}
+	
+	/**
+	 * Gets the parser that parses every string.
+	 */
+	public EarleyParser getParser() {
+		return parser;
+	}
+	
+	/**
+	 * Gets the executor that runs the tasks parsing each string.
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+	
+	/**
+	 * Gets the greatest number of strings handed to the executor ahead of
+	 * the one whose parse is to be returned next.
+	 */
+	public int getWindow() {
+		return window;
+	}
+	
+	/**
+	 * Parses every one of the specified strings for the specified seed
+	 * category, waiting until all of them are done.
+	 * @param strings The strings to parse, each an iterable series of tokens.
+	 * @return The parses of the strings, in the same order as the strings.
+	 * @throws InterruptedException If the calling thread is interrupted
+	 * while waiting for a parse.
+	 * @see #iterator(Iterable, Category)
+	 */
+	public List<Parse> parseAll(Iterable<? extends Iterable<String>> strings,
+			Category seed) throws InterruptedException {
+		List<Parse> parses = new ArrayList<Parse>();
+		Parses i = new Parses(strings.iterator(), seed);
+		while(i.hasNext()) {
+			parses.add(i.take());
+		}
+		
+		return parses;
+	}
+	
+	/**
+	 * Gets an iterator over the parses of the specified strings for the
+	 * specified seed category, in the same order as the strings. Strings are
+	 * handed to the executor as the iterator is advanced, and each parse is
+	 * returned as soon as it and the ones before it are done, without
+	 * waiting for the rest.
+	 * <p>
+	 * If the thread calling {@link Iterator#next()} is interrupted while
+	 * waiting, the iterator throws an {@link IllegalStateException} and the
+	 * thread's interrupted status is set again.
+	 * @param strings The strings to parse, each an iterable series of tokens.
+	 * These are only read as the iterator is advanced.
+	 * @see #parseAll(Iterable, Category)
+	 */
+	public Iterator<Parse> iterator(
+			Iterable<? extends Iterable<String>> strings, Category seed) {
+		return new Parses(strings.iterator(), seed);
+	}
+	
+	/**
+	 * Makes the parse returned for a string when an exception is thrown
+	 * while parsing it.
+	 */
+	static Parse failed(Iterable<String> tokens, Category seed,
+			PepException cause) {
+		Parse p = new Parse(seed, new Chart(), true);
+		p.cause = cause;
+		if(tokens != null) {
+			for(String t : tokens) {
+				p.tokens.add(t);
+			}
+		}
+		
+		return p;
+	}
+	
+	/**
+	 * Parses a single string.
+	 */
+	class Task implements Callable<Parse> {
+		Iterable<String> tokens;
+		Category seed;
+		
+		Task(Iterable<String> tokens, Category seed) {
+			this.tokens = tokens;
+			this.seed = seed;
+		}
+		
+		public Parse call() {
+			try {
+				return parser.parse(tokens, seed, workspaces.get());
+			}
+			catch(PepException pe) {
+				return BatchParser.failed(tokens, seed, pe);
+			}
+			catch(RuntimeException re) {
+				return BatchParser.failed(tokens, seed,
+						new PepException("problem parsing", re));
+			}
+		}
+	}
+	
+	/**
+	 * Hands strings to the executor, keeping the tasks for those whose parses
+	 * have not been returned yet in order.
+	 */
+	class Parses implements Iterator<Parse> {
+		Iterator<? extends Iterable<String>> strings;
+		Category seed;
+		LinkedList<FutureTask<Parse>> pending
+			= new LinkedList<FutureTask<Parse>>();
+		
+		Parses(Iterator<? extends Iterable<String>> strings, Category seed) {
+			this.strings = strings;
+			this.seed = seed;
+		}
+		
+		/**
+		 * Hands strings to the executor until the window is full.
+		 */
+		private void fill() {
+			while(pending.size() < window && strings.hasNext()) {
+				FutureTask<Parse> task
+					= new FutureTask<Parse>(new Task(strings.next(), seed));
+				pending.add(task);
+				executor.execute(task);
+			}
+		}
+		
+		public boolean hasNext() {
+			fill();
+			return !pending.isEmpty();
+		}
+		
+		/**
+		 * Waits for the next parse.
+		 */
+		Parse take() throws InterruptedException {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			
+			FutureTask<Parse> task = pending.getFirst();
+			Parse p;
+			try {
+				p = task.get();
+			}
+			catch(ExecutionException ee) { // an error, not an exception
+				Throwable t = ee.getCause();
+				if(t instanceof RuntimeException) {
+					throw (RuntimeException)t;
+				}
+				if(t instanceof Error) {
+					throw (Error)t;
+				}
+				
+				throw new IllegalStateException(t);
+			}
+			
+			pending.removeFirst();
+			fill();
+			return p;
+		}
+		
+		public Parse next() {
+			try {
+				return take();
+			}
+			catch(InterruptedException ie) {
+				Thread.currentThread().interrupt(); // let the caller see it
+				throw new IllegalStateException("interrupted", ie);
+			}
+		}
+		
+		/**
+		 * Not supported, since the parses are not kept.
+		 * @throws UnsupportedOperationException Always.
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Set;
+
+
+/**
+ * Reads and writes grammars in a compact binary form, so that a large
+ * grammar can be compiled once and then loaded without parsing or
+ * validating XML.
+ * <p>
+ * A binary grammar file holds, after a magic number and a format version,
+ * the grammar's name, its table of {@link Grammar#getCategory(String, boolean)
+ * categories} in the order they are numbered, and its rules as arrays of
+ * category numbers grouped by left side. All numbers are big-endian
+ * <code>int</code>s and all strings are UTF-8, preceded by their length in
+ * bytes. A file is {@link #read(File) read} as a plain stream in a single
+ * pass, decoding the categories and rules straight into a new grammar whose
+ * categories are numbered exactly as they were in the grammar written. Only
+ * the grammar itself is stored, so it is {@link Grammar#compile() compiled}
+ * as usual once it has been read.
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ * @since 0.5
+ * @see Grammar#compile()
+ */
+public class BinaryGrammar {
+	
+	/**
+	 * The first four bytes of every binary grammar file, <code>PEPG</code>.
+	 */
+	public static final int MAGIC = 0x50455047;
+	
+	/**
+	 * The version of the format written by {@link #write(Grammar, File)}.
+	 */
+	public static final int VERSION = 1;
+	
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private BinaryGrammar() {
+		// static methods only
+	}
+	
+	/**
+	 * Tests whether the specified file starts with the
+	 * {@link #MAGIC magic number} of a binary grammar.
+	 * @throws PepException If the file could not be read.
+	 */
+	public static boolean isBinary(File file) throws PepException {
+		byte[] b = new byte[4];
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				int n = 0;
+				while(n < b.length) {
+					int r = in.read(b, n, b.length - n);
+					if(r < 0) {
+						return false;
+					}
+					
+					n += r;
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch(IOException io) {
+			throw new PepException("problem reading grammar", io);
+		}
+		
+		return (ByteBuffer.wrap(b).getInt() == MAGIC);
+	}
+	
+	/**
+	 * Writes the specified grammar to a binary grammar file.
+	 * @throws PepException If the file could not be written.
+	 */
+	public static void write(Grammar grammar, File file) throws PepException {
+		try {
+			DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				BinaryGrammar.writeString(out, grammar.name);
+				
+				int size = grammar.categories.size();
+				out.writeInt(size - 1); // START is always there
+				for(Category c : grammar.categories.subList(1, size)) {
+					out.writeBoolean(c.terminal);
+					BinaryGrammar.writeString(out, c.name);
+				}
+				
+				int count = 0;
+				for(Set<Rule> s : grammar.rules) {
+					if(s != null) {
+						count += s.size();
+					}
+				}
+				
+				out.writeInt(count);
+				for(Set<Rule> s : grammar.rules) {
+					if(s != null) {
+						for(Rule r : s) {
+							out.writeInt(r.left.id);
+							out.writeInt(r.right.length);
+							for(Category c : r.right) {
+								out.writeInt(c.id);
+							}
+						}
+					}
+				}
+			}
+			finally {
+				out.close();
+			}
+		}
+		catch(IOException io) {
+			throw new PepException("problem writing grammar", io);
+		}
+	}
+	
+	/**
+	 * Reads a grammar from a binary grammar file written by
+	 * {@link #write(Grammar, File)}.
+	 * @throws PepException If the file could not be read or is not a binary
+	 * grammar of this version.
+	 */
+	public static Grammar read(File file) throws PepException {
+		try {
+			DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+			try {
+				return BinaryGrammar.read(in, file.length());
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch(EOFException eof) {
+			throw new PepException("truncated grammar file", eof);
+		}
+		catch(IOException io) {
+			throw new PepException("problem reading grammar", io);
+		}
+		catch(IllegalArgumentException iae) {
+			throw new PepException("problem loading grammar", iae);
+		}
+	}
+	
+	/**
+	 * Helper for read(File) that reads the grammar from the file's stream.
+	 * @param limit The length of the file, which no string or rule read can
+	 * be longer than.
+	 */
+	private static Grammar read(DataInputStream in, long limit)
+			throws IOException, PepException {
+		if(in.readInt() != MAGIC) {
+			throw new PepException("not a binary grammar");
+		}
+		
+		int version = in.readInt();
+		if(version != VERSION) {
+			throw new PepException("unsupported binary grammar version: "
+					+ version);
+		}
+		
+		Grammar g = new Grammar(BinaryGrammar.readString(in, limit));
+		
+		int size = in.readInt() + 1;
+		if(size < 1) {
+			throw new PepException("bad category count: " + (size - 1));
+		}
+		
+		for(int i = 1; i < size; i++) {
+			boolean terminal = in.readBoolean();
+			if(g.getCategory(BinaryGrammar.readString(in, limit), terminal).id
+					!= i) {
+				throw new PepException("duplicate category: " + i);
+			}
+		}
+		
+		int count = in.readInt();
+		for(int i = 0; i < count; i++) {
+			Category left = BinaryGrammar.category(g, in.readInt());
+			int length = in.readInt();
+			if(length < 0 || length > limit / 4) {
+				throw new PepException("bad rule length: " + length);
+			}
+			
+			Category[] right = new Category[length];
+			for(int j = 0; j < length; j++) {
+				right[j] = BinaryGrammar.category(g, in.readInt());
+			}
+			
+			g.addRule(new Rule(left, right));
+		}
+		
+		return g;
+	}
+	
+	/**
+	 * Helper for read that gets a category by its number.
+	 */
+	private static Category category(Grammar g, int id) throws PepException {
+		if(id < 1 || id >= g.categories.size()) {
+			throw new PepException("bad category number: " + id);
+		}
+		
+		return g.categories.get(id);
+	}
+	
+	/**
+	 * Writes a string as its length and UTF-8 bytes, or a length of
+	 * <code>-1</code> for <code>null</code>.
+	 */
+	private static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		if(s == null) {
+			out.writeInt(-1);
+		}
+		else {
+			byte[] b = s.getBytes(UTF8);
+			out.writeInt(b.length);
+			out.write(b);
+		}
+	}
+	
+	/**
+	 * Reads a string written by writeString.
+	 */
+	private static String readString(DataInputStream in, long limit)
+			throws IOException, PepException {
+		int length = in.readInt();
+		if(length == -1) {
+			return null;
+		}
+		if(length < 0 || length > limit) {
+			throw new PepException("bad string length: " + length);
+		}
+		
+		byte[] b = new byte[length];
+		in.readFully(b);
+		return new String(b, UTF8);
+	}
+}
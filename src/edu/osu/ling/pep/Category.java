@@ -26,6 +26,12 @@ package edu.osu.ling.pep;
  * Once created, categories are immutable and have no <code>setXxx</code>
  * methods. This ensures that, once loaded in a grammar, a category will
  * remain as it was when created.
+ * <p>
+ * Each {@link Grammar grammar} keeps a table of the categories in its rules,
+ * so that there is only one category in the grammar for any given name and
+ * terminal status. Such categories are numbered densely in the order they
+ * were added, and two of them from the same grammar are only equal if they
+ * are the same object, so they can be compared without comparing their names.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 556 $
  * @see Rule
@@ -33,11 +39,20 @@ package edu.osu.ling.pep;
 public class Category {
 	String name;
 	boolean terminal;
+	Grammar grammar;
+	int id = -1;
+	private int hashCode;
 	
 	/**
-	 * Special start category for seeding Earley parsers. 
+	 * Special start category for seeding Earley parsers. It is the first
+	 * category in every grammar's table.
+	 * @see Grammar#getCategory(String, boolean)
 	 */
 	public static final Category START = new Category("<start>", false) {
+		{
+			id = 0;
+		}
+		
 		/**
 		 * Overrides {@link Category#equals(Object)} to compare using the
 		 * <code>==</code> operator (since there is only ever one start
@@ -101,8 +116,15 @@ public class Category {
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if(this == obj) {
+			return true;
+		}
 		if(obj instanceof Category) {
 			Category oc = (Category)obj;
+			if(grammar != null && grammar == oc.grammar) {
+				return false; // only one in a grammar with the same name
+			}
+			
 			return (oc != Category.START && 
 					terminal == oc.terminal && name.equals(oc.name));
 		}
@@ -116,7 +138,12 @@ public class Category {
 	 */
 	@Override
 	public int hashCode() {
-		return (31 * name.hashCode() * Boolean.valueOf(terminal).hashCode());
+		if(hashCode == 0) { // computed once, as categories do not change
+			hashCode = (31 * name.hashCode()
+					* Boolean.valueOf(terminal).hashCode());
+		}
+		
+		return hashCode;
 	}
 
 	/**
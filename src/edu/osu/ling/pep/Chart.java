@@ -10,12 +10,18 @@
  */
 package edu.osu.ling.pep;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 
 /**
@@ -25,52 +31,253 @@ import java.util.TreeMap;
  * they originate. Since the edge sets are {@link Set sets}, an edge can only
  * be added at a given index once (as sets do not permit duplicate members).
  * Edge sets are not guaranteed to maintain edges in their order of insertion.
+ * <p>
+ * The edge sets are kept in an array indexed by string position that grows
+ * as edges are added at higher indices, so looking up the edges at a given
+ * index does not require any boxing or searching. Each edge set also keeps
+ * its active edges indexed by their
+ * {@link DottedRule#getActiveCategory() active category}, so that the edges
+ * waiting for a given category at an index can be found without testing every
+ * edge there, and its passive edges indexed by their origin and
+ * {@link DottedRule#getLeft() left side}, so that the constituents found
+ * over a given span of the string can be looked up directly. A chart also
+ * keeps a table of the indices where each of its edges was added, in
+ * ascending order, so that {@link #indexOf(Edge) finding an edge} only takes
+ * a hash lookup and a binary search. Charts obtained by
+ * {@link #subChart(Integer, Integer)}, {@link #headChart(Integer)} and
+ * {@link #tailChart(Integer)} are views backed by the chart they were
+ * obtained from.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 2070 $
  */
 public class Chart {
-	static final Integer NULL_INDEX = new Integer(-1);
+	static final Integer NULL_INDEX = Integer.valueOf(-1);
+	static final int DEFAULT_CAPACITY = 16;
+	
+	Chart base;
+	int from, to;
 	
-	SortedMap<Integer, Set<Edge>> edgeSets;
+	Column[] edgeSets;
+	int length;
+	Map<Edge, Indices> edgeIndices;
+	Column[] spareColumns; // emptied by reset(), by index
 	
 	/**
 	 * Creates a new chart, initializing its internal data structure.
 	 */
 	public Chart() {
-		this(new TreeMap<Integer, Set<Edge>>());
+		this(Chart.DEFAULT_CAPACITY);
 	}
 	
 	/**
-	 * Creates a new chart based on the specified chart. The newly created 
+	 * Creates a new chart based on the specified chart. The newly created
 	 * chart contains all the edges as the specified chart at all the same
 	 * indices.
 	 * @param chart The chart to base the newly created chart upon.
 	 * @since 0.4
 	 */
 	public Chart(Chart chart) {
-		this(new TreeMap<Integer, Set<Edge>>(chart.edgeSets));
+		this(chart.end());
+		
+		for(int i = chart.start(); i < chart.end(); i++) {
+			Column edges = chart.edgeSet(i);
+			if(edges != null) {
+				edgeSets[i] = new Column();
+				edgeSets[i].addAll(edges);
+				length = i + 1;
+				
+				for(Edge e : edges) {
+					recordIndex(e, i);
+				}
+			}
+		}
 	}
 	
 	/**
-	 * Creates a new chart from the specified sorted map of indices mapped to
-	 * edge sets.
-	 * @param edgeSets The map of integer-mapped edge sets to use as this
-	 * chart's backing data structure.
-	 * @since 0.2
+	 * Creates a new, empty chart with room for edges at the specified
+	 * number of string indices before its internal array has to grow.
+	 * @param capacity The number of indices to allocate room for.
+	 * @since 0.5
+	 */
+	Chart(int capacity) {
+		base = this;
+		from = Integer.MIN_VALUE;
+		to = Integer.MAX_VALUE;
+		edgeSets = new Column[Math.max(capacity, 1)];
+		edgeIndices = new HashMap<Edge, Indices>();
+	}
+	
+	/**
+	 * Creates a view of the specified chart containing only the indices
+	 * between <code>from</code> (inclusive) and <code>to</code> (exclusive).
+	 * @since 0.5
+	 */
+	private Chart(Chart chart, int from, int to) {
+		if(from > to) {
+			throw new IllegalArgumentException("from > to: " + from + " > "
+					+ to);
+		}
+		if(from < chart.from || to > chart.to) {
+			throw new IllegalArgumentException("range out of bounds: ["
+					+ from + ", " + to + ")");
+		}
+		
+		this.base = chart.base;
+		this.from = from;
+		this.to = to;
+	}
+	
+	/**
+	 * Gets the first array index covered by this chart.
+	 */
+	int start() {
+		return Math.max(from, 0);
+	}
+	
+	/**
+	 * Gets the array index just after the last one covered by this chart.
 	 */
-	Chart(SortedMap<Integer, Set<Edge>> edgeSets) {
-		this.edgeSets = edgeSets;
+	int end() {
+		return Math.min(to, base.length);
+	}
+	
+	/**
+	 * Gets the edge set at the specified index without wrapping it, or
+	 * <code>null</code> if this chart has no edges there.
+	 */
+	Column edgeSet(int index) {
+		return (index < start() || index >= end())
+			? null : base.edgeSets[index];
+	}
+	
+	/**
+	 * Gets the active edges at the specified index whose
+	 * {@link DottedRule#getActiveCategory() active category} is the given
+	 * category, in the order they were added.
+	 * @return The waiting edges, or <code>null</code> if there are none.
+	 * @since 0.5
+	 */
+	List<Edge> getWaitingEdges(int index, Category category) {
+		Column edges = edgeSet(index);
+		return (edges == null) ? null : edges.waiting.get(category);
+	}
+	
+	/**
+	 * Gets the passive edges in this chart that span the string from the
+	 * specified origin to the specified index and whose dotted rules have the
+	 * given category as their left side.
+	 * @return An unmodifiable list of edges in the order they were added,
+	 * empty if there are none.
+	 * @since 0.5
+	 */
+	public List<Edge> getCompletedEdges(Category category, int origin,
+			int index) {
+		Map<Category, List<Edge>> completed = getCompleted(origin, index);
+		List<Edge> edges = (completed == null) ? null : completed.get(category);
+		return (edges == null) ? Collections.<Edge>emptyList()
+			: Collections.unmodifiableList(edges);
+	}
+	
+	/**
+	 * Gets the categories of the constituents this chart contains that span
+	 * the string from the specified origin to the specified index, that is,
+	 * the left sides of the passive edges there.
+	 * @return An unmodifiable set of categories, empty if there are none.
+	 * @since 0.5
+	 */
+	public Set<Category> getCompletedCategories(int origin, int index) {
+		Map<Category, List<Edge>> completed = getCompleted(origin, index);
+		return (completed == null) ? Collections.<Category>emptySet()
+			: Collections.unmodifiableSet(completed.keySet());
+	}
+	
+	/**
+	 * Helper for looking up the index of passive edges by span.
+	 */
+	private Map<Category, List<Edge>> getCompleted(int origin, int index) {
+		Column edges = edgeSet(index);
+		return (edges == null) ? null : edges.completed.get(origin);
+	}
+	
+	/**
+	 * Gets the topmost item on the deterministic reduction path for the
+	 * specified category at the given index, as described by Leo (1991). A
+	 * reduction path exists when exactly one edge at the index is waiting for
+	 * the category and that edge becomes passive once it is completed. The
+	 * path continues from the waiting edge's origin for its left side.
+	 * Leo items are computed the first time they are asked for and then
+	 * remembered, so they should only be requested for indices whose edges
+	 * are all in place.
+	 * @return The Leo item for the category at the index, or
+	 * <code>null</code> if there is no deterministic reduction path.
+	 * @see ParserOption#LEO_RIGHT_RECURSION
+	 * @since 0.5
+	 */
+	LeoItem getLeoItem(int index, Category category) {
+		// walk down the path until it ends or reaches a remembered item,
+		// avoiding recursion as the path can be as long as the input
+		List<Column> columns = new ArrayList<Column>();
+		List<Category> categories = new ArrayList<Category>();
+		List<Edge> path = new ArrayList<Edge>();
+		LeoItem item = null;
+		
+		while(true) {
+			Column edges = edgeSet(index);
+			if(edges == null) {
+				break;
+			}
+			if(edges.leoItems == null) {
+				edges.leoItems = new HashMap<Category, LeoItem>();
+			}
+			else if(edges.leoItems.containsKey(category)) {
+				item = edges.leoItems.get(category);
+				break;
+			}
+			
+			columns.add(edges);
+			categories.add(category);
+			
+			List<Edge> waiting = edges.waiting.get(category);
+			Edge w;
+			if(waiting == null || waiting.size() != 1 
+					|| (w = waiting.get(0)).dottedRule.position
+						!= w.dottedRule.right.length - 1) {
+				path.add(null);
+				break;
+			}
+			
+			path.add(w);
+			index = w.origin;
+			category = w.dottedRule.left;
+		}
+		
+		// remember the items on the way back up
+		for(int i = path.size() - 1; i >= 0; i--) {
+			Edge w = path.get(i);
+			item = (w == null) ? null : new LeoItem(w, item);
+			columns.get(i).leoItems.put(categories.get(i), item);
+		}
+		
+		return item;
 	}
 	
 	/**
 	 * Gets the set of indices at which this chart contains edges. For any
-	 * member of this set, {@link #getEdges(Integer)} will return a non-empty 
+	 * member of this set, {@link #getEdges(int)} will return a non-empty
 	 * set of edges.
 	 * @return A set containing every index in this chart where edges have
 	 * been added, sorted in ascending order (<code>0 ... <em>n</em></code>).
 	 */
 	public Set<Integer> indices() {
-		return edgeSets.keySet();
+		SortedSet<Integer> indices = new TreeSet<Integer>();
+		
+		for(int i = start(); i < end(); i++) {
+			if(base.edgeSets[i] != null) {
+				indices.add(i);
+			}
+		}
+		
+		return indices;
 	}
 	
 	/**
@@ -78,34 +285,52 @@ public class Chart {
 	 * @return The minimal member of {@link #indices()}. In most cases, this
 	 * will return <code>0</code> (unless this chart is a
 	 * {@link #subChart(Integer, Integer) subchart} of another chart).
+	 * @throws NoSuchElementException If this chart is
+	 * {@link #isEmpty() empty}.
 	 * @since 0.2
 	 */
 	public Integer firstIndex() {
-		return edgeSets.firstKey();
+		for(int i = start(); i < end(); i++) {
+			if(base.edgeSets[i] != null) {
+				return i;
+			}
+		}
+		
+		throw new NoSuchElementException("empty chart");
 	}
 	
 	/**
 	 * Gets the last index in this chart that contains edges.
 	 * @return The maximal member of {@link #indices()}.
+	 * @throws NoSuchElementException If this chart is
+	 * {@link #isEmpty() empty}.
 	 * @since 0.2
 	 */
 	public Integer lastIndex() {
-		return edgeSets.lastKey();
+		for(int i = end() - 1; i >= start(); i--) {
+			if(base.edgeSets[i] != null) {
+				return i;
+			}
+		}
+		
+		throw new NoSuchElementException("empty chart");
 	}
 	
 	/**
 	 * Gets a sub chart of this chart.
 	 * @param from The low endpoint (inclusive) of the sub chart.
 	 * @param to The high endpoint (exclusive) of the subchart.
-	 * @return A new chart containing only the edge sets in this chart where
-	 * <code>from &lt;= index &lt; to</code>.
+	 * @return A chart backed by this chart containing only the edge sets in
+	 * this chart where <code>from &lt;= index &lt; to</code>.
 	 * @throws NullPointerException If either <code>from</code> or
 	 * <code>to</code> is <code>null</code>.
+	 * @throws IllegalArgumentException If <code>from &gt; to</code>, or if
+	 * this chart is itself a view and the range falls outside it.
 	 * @since 0.2
 	 * @see java.util.SortedMap#subMap(Object, Object)
 	 */
 	public Chart subChart(Integer from, Integer to) {
-		return new Chart(edgeSets.subMap(from, to));
+		return new Chart(this, from, to);
 	}
 	
 	/**
@@ -118,7 +343,7 @@ public class Chart {
 	 * @see java.util.SortedMap#headMap(Object)
 	 */
 	public Chart headChart(Integer to) {
-		return new Chart(edgeSets.headMap(to));
+		return new Chart(this, from, to);
 	}
 	
 	/**
@@ -131,7 +356,7 @@ public class Chart {
 	 * @see java.util.SortedMap#tailMap(Object)
 	 */
 	public Chart tailChart(Integer from) {
-		return new Chart(edgeSets.tailMap(from));
+		return new Chart(this, from, to);
 	}
 	
 	/**
@@ -155,9 +380,12 @@ public class Chart {
 	 */
 	public Integer indexOf(Edge edge) {
 		if(edge != null) {
-			for(Map.Entry<Integer, Set<Edge>> entry : edgeSets.entrySet()) {
-				if(entry.getValue().contains(edge)) {
-					return entry.getKey();
+			Indices indices = base.edgeIndices.get(edge);
+			if(indices != null) {
+				// the lowest index where an equal edge was added in range
+				int i = indices.ceiling(start());
+				if(i >= 0 && i < end()) {
+					return i;
 				}
 			}
 		}
@@ -165,12 +393,93 @@ public class Chart {
 		return Chart.NULL_INDEX;
 	}
 	
+	/**
+	 * Records that the specified edge was added at the given index. Equal
+	 * edges can be added at more than one index, as for edges in a
+	 * {@link ParserOption#PACK_FOREST packed forest}. This method is only
+	 * called on the chart that views are backed by.
+	 */
+	private void recordIndex(Edge edge, int index) {
+		Indices indices = edgeIndices.get(edge);
+		if(indices == null) {
+			indices = new Indices();
+			edgeIndices.put(edge, indices);
+		}
+		
+		indices.add(index);
+	}
+	
 	/**
 	 * Removes all edges from this map at all indices (if any are present).
 	 * @since 0.4
 	 */
 	public void clear() {
-		edgeSets.clear();
+		for(int i = start(); i < end(); i++) {
+			base.edgeSets[i] = null;
+		}
+		
+		while(base.length > 0 && base.edgeSets[base.length - 1] == null) {
+			base.length--;
+		}
+		
+		base.edgeIndices.clear(); // rebuilt from the edge sets left
+		for(int i = 0; i < base.length; i++) {
+			if(base.edgeSets[i] != null) {
+				for(Edge e : base.edgeSets[i]) {
+					base.recordIndex(e, i);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Empties this chart so that it can be filled again, keeping the edge
+	 * sets it had so that they can be reused rather than reallocated. Unlike
+	 * {@link #clear()}, this leaves the edge sets themselves empty, so any
+	 * {@link #getEdges(int) sets of edges} gotten from this chart before
+	 * are emptied as well.
+	 * @param capacity The number of indices to make room for.
+	 * @since 0.5
+	 */
+	void reset(int capacity) {
+		if(base != this) {
+			throw new UnsupportedOperationException("view of another chart");
+		}
+		
+		if(capacity > edgeSets.length) {
+			edgeSets = Arrays.copyOf(edgeSets, capacity);
+		}
+		if(spareColumns == null || spareColumns.length < edgeSets.length) {
+			spareColumns = (spareColumns == null) ? new Column[edgeSets.length]
+				: Arrays.copyOf(spareColumns, edgeSets.length);
+		}
+		
+		for(int i = 0; i < length; i++) {
+			if(edgeSets[i] != null) {
+				edgeSets[i].clear();
+				spareColumns[i] = edgeSets[i];
+				edgeSets[i] = null;
+			}
+		}
+		
+		length = 0;
+		edgeIndices.clear();
+	}
+	
+	/**
+	 * Helper for addEdge that gets an edge set for an index, reusing one
+	 * emptied by reset() if there is one.
+	 */
+	private Column newColumn(int index) {
+		if(spareColumns != null && index < spareColumns.length) {
+			Column c = spareColumns[index];
+			if(c != null) {
+				spareColumns[index] = null;
+				return c;
+			}
+		}
+		
+		return new Column();
 	}
 	
 	/**
@@ -180,8 +489,14 @@ public class Chart {
 	 * @since 0.4
 	 */
 	public boolean isEmpty() {
-		return edgeSets.isEmpty();
-	}	
+		for(int i = start(); i < end(); i++) {
+			if(base.edgeSets[i] != null) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
 	
 	/**
 	 * Tests whether this chart contains any edges at a given string index.
@@ -189,8 +504,8 @@ public class Chart {
 	 * @return <code>true</code> iff this chart contains an edge set at
 	 * <code>index</code>.
 	 */
-	public boolean containsEdges(Integer index) {
-		return edgeSets.containsKey(index);
+	public boolean containsEdges(int index) {
+		return (edgeSet(index) != null);
 	}
 	
 	/**
@@ -201,8 +516,10 @@ public class Chart {
 	public int countEdges() {
 		int count = 0;
 		
-		for(Set<Edge> edgeSet : edgeSets.values()) {
-			count += edgeSet.size();
+		for(int i = start(); i < end(); i++) {
+			if(base.edgeSets[i] != null) {
+				count += base.edgeSets[i].size();
+			}
 		}
 		
 		return count;
@@ -215,17 +532,13 @@ public class Chart {
 	 * at <code>index</code>, or <code>null</code> if no edge set exists in
 	 * this chart for the given index. The edge set returned by this
 	 * method is <em>not</em> guaranteed to contain the edges in the order in
-	 * which they were {@link #addEdge(Integer, Edge) added}. This method
+	 * which they were {@link #addEdge(int, Edge) added}. This method
 	 * returns a set of edges that is not modifiable.
-	 * @throws NullPointerException If <code>index</code> is <code>null</code>.
 	 * @see java.util.Collections#unmodifiableSet(Set)
 	 */
-	public Set<Edge> getEdges(Integer index) {
-		if(index == null) {
-			throw new NullPointerException("null index");
-		}
-		
-		return Collections.unmodifiableSet(edgeSets.get(index));
+	public Set<Edge> getEdges(int index) {
+		Set<Edge> edges = edgeSet(index);
+		return (edges == null) ? null : Collections.unmodifiableSet(edges);
 	}
 	
 	/**
@@ -234,30 +547,49 @@ public class Chart {
 	 * adding the edge.
 	 * @param index The index for <code>edge</code>.
 	 * @param edge The edge to add.
-	 * @return <code>true</code> iff this chart did not already contain 
+	 * @return <code>true</code> iff this chart did not already contain
 	 * <code>edge</code> at the given index.
 	 * @throws IndexOutOfBoundsException If <code>index < 0</code>.
-	 * @throws NullPointerException If <code>index</code> or
-	 * <code>edge</code> is <code>null</code>.
+	 * @throws IllegalArgumentException If this chart is a view of another
+	 * chart and <code>index</code> falls outside of its range.
+	 * @throws NullPointerException If <code>edge</code> is <code>null</code>.
 	 */
-	public boolean addEdge(Integer index, Edge edge) {
-		if(index == null) {
-			throw new NullPointerException("null index");
-		}
+	public boolean addEdge(int index, Edge edge) {
 		if(edge == null) {
 			throw new NullPointerException("null edge");
 		}
-		if(index.intValue() < 0) {
+		if(index < 0) {
 			throw new IndexOutOfBoundsException("invalid index: " + index);
 		}
+		if(index < from || index >= to) {
+			throw new IllegalArgumentException("index out of range: "
+					+ index);
+		}
 		
-		Set<Edge> edges = edgeSets.get(index); // already edges at index?
+		Chart b = base;
+		if(index >= b.edgeSets.length) { // grow with the input
+			Column[] newSets = new Column[Math.max(index + 1,
+					b.edgeSets.length * 2)];
+			System.arraycopy(b.edgeSets, 0, newSets, 0, b.length);
+			b.edgeSets = newSets;
+		}
+		
+		Column edges = b.edgeSets[index]; // already edges at index?
 		if(edges == null) { // create and add edge set if none exists at index
-			edges = new HashSet<Edge>();
-			edgeSets.put(index, edges);
+			edges = b.newColumn(index);
+			b.edgeSets[index] = edges;
+			
+			if(index >= b.length) {
+				b.length = index + 1;
+			}
 		}
 		
-		return edges.add(edge); // always true for new edge set
+		if(!edges.add(edge)) { // always added to a new edge set
+			return false;
+		}
+		
+		b.recordIndex(edge, index);
+		return true;
 	}
 	
 	/**
@@ -269,23 +601,232 @@ public class Chart {
 	 */
 	@Override
 	public boolean equals(Object obj) {
-		return (obj instanceof Chart && edgeSets.equals(((Chart)obj).edgeSets));
+		if(obj instanceof Chart) {
+			Chart oc = (Chart)obj;
+			int last = Math.max(end(), oc.end());
+			for(int i = Math.min(start(), oc.start()); i < last; i++) {
+				Set<Edge> edges = edgeSet(i), others = oc.edgeSet(i);
+				if((edges == null) ? (others != null) : !edges.equals(others)) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		return false;
 	}
 
 	/**
-	 * Computes a hash code for this chart based on its internal data 
-	 * structure.
+	 * Computes a hash code for this chart based on its internal data
+	 * structure. The hash code is the same as the one computed for a
+	 * {@link java.util.SortedMap sorted map} of indices to edge sets
+	 * containing the same edges.
 	 */
 	@Override
 	public int hashCode() {
-		return 37 * (1 + edgeSets.hashCode());
+		int hash = 0;
+		
+		for(int i = start(); i < end(); i++) {
+			if(base.edgeSets[i] != null) {
+				hash += (i ^ base.edgeSets[i].hashCode()); // as Map.Entry
+			}
+		}
+		
+		return 37 * (1 + hash);
 	}
 
 	/**
 	 * Gets a string representation of this chart.
+	 * @return &quot;<code>{0=[0[S -> * NP VP], ...], 1=[...]}</code>&quot;,
+	 * listing the edges at each index.
 	 */
 	@Override
 	public String toString() {
-		return edgeSets.toString();
+		StringBuilder sb = new StringBuilder("{");
+		
+		for(int i = start(); i < end(); i++) {
+			if(base.edgeSets[i] != null) {
+				if(sb.length() > 1) {
+					sb.append(", ");
+				}
+				
+				sb.append(i);
+				sb.append('=');
+				sb.append(base.edgeSets[i]);
+			}
+		}
+		
+		sb.append('}');
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * The set of edges at a single string index. Alongside the edges
+	 * themselves, a column maps each active category to the list of active
+	 * edges waiting for it, and each origin to the passive edges from there
+	 * listed by their left side. Columns are only ever added to.
+	 * @since 0.5
+	 */
+	static class Column extends AbstractSet<Edge> {
+		Map<Edge, Edge> edges = new HashMap<Edge, Edge>();
+		Map<Category, List<Edge>> waiting = new HashMap<Category, List<Edge>>();
+		Map<Integer, Map<Category, List<Edge>>> completed
+			= new HashMap<Integer, Map<Category, List<Edge>>>();
+		Map<Category, LeoItem> leoItems;
+		Map<Category, Edge> nullEdges;
+		
+		/**
+		 * Adds an edge to this column, indexing it by its active category if it
+		 * is not passive, or by its origin and left side if it is.
+		 */
+		@Override
+		public boolean add(Edge edge) {
+			if(edges.containsKey(edge)) {
+				return false;
+			}
+			
+			edges.put(edge, edge);
+			
+			Category active = edge.dottedRule.activeCategory;
+			if(active != null) {
+				Column.index(waiting, active, edge);
+			}
+			else {
+				Map<Category, List<Edge>> c = completed.get(edge.origin);
+				if(c == null) {
+					c = new HashMap<Category, List<Edge>>();
+					completed.put(edge.origin, c);
+				}
+				
+				Column.index(c, edge.dottedRule.left, edge);
+			}
+			
+			return true;
+		}
+		
+		/**
+		 * Helper for add that appends an edge to the list for a category.
+		 */
+		private static void index(Map<Category, List<Edge>> lists,
+				Category category, Edge edge) {
+			List<Edge> l = lists.get(category);
+			if(l == null) {
+				l = new ArrayList<Edge>();
+				lists.put(category, l);
+			}
+			
+			l.add(edge);
+		}
+		
+		/**
+		 * Gets the edge in this column that is equal to the specified edge.
+		 * @return The edge that was added to this column, or
+		 * <code>null</code> if no equal edge was.
+		 */
+		Edge get(Edge edge) {
+			return edges.get(edge);
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			return edges.containsKey(o);
+		}
+		
+		@Override
+		public Iterator<Edge> iterator() {
+			return Collections.unmodifiableSet(edges.keySet()).iterator();
+		}
+		
+		@Override
+		public int size() {
+			return edges.size();
+		}
+		
+		/**
+		 * Empties this column, keeping the room its tables have grown to.
+		 */
+		@Override
+		public void clear() {
+			edges.clear();
+			waiting.clear();
+			completed.clear();
+			if(leoItems != null) {
+				leoItems.clear();
+			}
+			if(nullEdges != null) {
+				nullEdges.clear();
+			}
+		}
+		
+		@Override
+		public <T> T[] toArray(T[] a) {
+			return edges.keySet().toArray(a);
+		}
+	}
+	
+	/**
+	 * The distinct indices where equal edges were added to a chart, kept
+	 * sorted in an array that grows by doubling. Edges are added column by
+	 * column as the string is read, so a new index almost always goes at
+	 * the end.
+	 * @since 0.5
+	 */
+	static class Indices {
+		int[] values = new int[1];
+		int size;
+		
+		/**
+		 * Adds an index, keeping the indices in ascending order.
+		 */
+		void add(int index) {
+			if(size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			
+			int i = size;
+			while(i > 0 && values[i - 1] > index) { // only if out of order
+				values[i] = values[i - 1];
+				i--;
+			}
+			
+			values[i] = index;
+			size++;
+		}
+		
+		/**
+		 * Finds the lowest index that is at least the specified one.
+		 * @return The index found, or <code>-1</code> if every index is
+		 * lower than <code>from</code>.
+		 */
+		int ceiling(int from) {
+			int i = Arrays.binarySearch(values, 0, size, from);
+			if(i < 0) { // no edge at from itself
+				i = -(i + 1);
+			}
+			
+			return (i < size) ? values[i] : -1;
+		}
+	}
+	
+	/**
+	 * An item on a deterministic reduction path: the only edge waiting for
+	 * some category at an index, linked to the item for the waiting edge's
+	 * left side at its origin. The topmost waiting edge on the path is kept
+	 * so that completing a category for which a Leo item exists can skip
+	 * straight to the top.
+	 * @see Chart#getLeoItem(int, Category)
+	 * @since 0.5
+	 */
+	static class LeoItem {
+		Edge waiting, top;
+		LeoItem next;
+		
+		LeoItem(Edge waiting, LeoItem next) {
+			this.waiting = waiting;
+			this.next = next;
+			this.top = (next == null) ? waiting : next.top;
+		}
 	}
 }
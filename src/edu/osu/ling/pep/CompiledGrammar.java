@@ -0,0 +1,531 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * A frozen form of a {@link Grammar grammar}, as used by
+ * {@link EarleyParser Earley parsers}.
+ * <p>
+ * A compiled grammar is obtained by calling {@link Grammar#compile()}. It
+ * keeps the rules for each {@link Rule#getLeft() left side category} in an
+ * array, in the order they were added to the grammar, along with the subset
+ * of those rules that are not {@link Rule#isPreterminal() preterminals}.
+ * For each category, it also keeps the closure of the categories whose rules
+ * are predicted along with the category's own rules: those that occur first
+ * on the right side of the category's rules, those that occur first on the
+ * right side of their rules, and so on. Predicting for a category then only
+ * involves looking up its closure.
+ * <p>
+ * The {@link #isNullable(Category) nullable} categories, those that can
+ * produce the empty string by means of {@link Rule#isEmpty() empty rules},
+ * are found once as well, along with every rule for each of them whose right
+ * side consists only of nullable categories. A parser can then advance the dot
+ * over a nullable category as soon as it is reached, without waiting for an
+ * empty constituent to be completed. Closures and FIRST sets look past
+ * nullable categories accordingly.
+ * <p>
+ * The FIRST set of each category, the set of terminals that can begin a
+ * string derived from it, is kept as well, so that a parser looking ahead
+ * one token can {@link ParserOption#LOOKAHEAD_PREDICTION skip predictions}
+ * that can not begin with that token.
+ * Its lexicon maps each token, and each token with its case folded, to the
+ * {@link Rule#isSingletonPreterminal() singleton preterminal} rules that
+ * produce it, so that the rules to predict just in time for a scanned token
+ * can be looked up once rather than searched for. It also determines once
+ * whether the grammar contains a rule that forces
+ * {@link ParserOption#PREDICT_FOR_PRETERMINALS prediction for preterminals},
+ * so that parsers do not have to look through the whole grammar for every
+ * parse.
+ * <p>
+ * Compiled grammars never change. A grammar keeps its compiled form until a
+ * rule is added to it, so every parser using a grammar shares the same
+ * compiled grammar.
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ * @since 0.5
+ * @see Grammar#compile()
+ */
+public class CompiledGrammar {
+	static final Rule[] NO_RULES = new Rule[0];
+	static final Category[] NO_CATEGORIES = new Category[0];
+	static final int[] NO_TERMINALS = new int[0];
+	
+	Grammar grammar;
+	Rule[][] rules, nonPreterminals;
+	Category[][] closures, nonPreterminalClosures;
+	Map<String, Rule[]> lexicon, foldedLexicon;
+	BitSet[] first;
+	boolean[] nullable;
+	Rule[][] nullingRules;
+	Map<String, int[]> foldedTerminals;
+	Rule incompatibleRule;
+	
+	/**
+	 * Compiles the specified grammar as it currently is.
+	 */
+	CompiledGrammar(Grammar grammar) {
+		this.grammar = grammar;
+		
+		int size = grammar.rules.size();
+		rules = new Rule[size][];
+		nonPreterminals = new Rule[size][];
+		
+		Map<String, List<Rule>> words = new HashMap<String, List<Rule>>(),
+			foldedWords = new HashMap<String, List<Rule>>();
+		List<Rule> np = new ArrayList<Rule>();
+		for(int id = 0; id < size; id++) {
+			Set<Rule> s = grammar.rules.get(id);
+			if(s == null) {
+				rules[id] = nonPreterminals[id] = NO_RULES;
+				continue;
+			}
+			
+			rules[id] = s.toArray(new Rule[s.size()]);
+			
+			np.clear();
+			for(Rule r : rules[id]) {
+				if(!r.preterminal) {
+					np.add(r);
+				}
+				else if(r.right.length == 1) {
+					String word = r.right[0].name;
+					CompiledGrammar.addWord(words, word, r);
+					if(word != null) {
+						CompiledGrammar.addWord(foldedWords,
+								CompiledGrammar.fold(word), r);
+					}
+				}
+				else if(incompatibleRule == null) {
+					incompatibleRule = r;
+				}
+			}
+			
+			nonPreterminals[id] = np.toArray(new Rule[np.size()]);
+		}
+		
+		lexicon = CompiledGrammar.toArrays(words);
+		foldedLexicon = CompiledGrammar.toArrays(foldedWords);
+		
+		// nullable categories, iterated until nothing changes; each one's
+		// first nulling rule only uses categories already found to be nullable
+		nullable = new boolean[size];
+		nullingRules = new Rule[size][];
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int id = 0; id < size; id++) {
+				if(!nullable[id]) {
+					for(Rule r : rules[id]) {
+						if(nullable(r.right, 0)) {
+							nullable[id] = changed = true;
+							nullingRules[id] = new Rule[] {r};
+							break;
+						}
+					}
+				}
+			}
+		}
+		
+		// then the rest of the nulling rules, which may lead back to any
+		// nullable category
+		List<Rule> nulling = new ArrayList<Rule>();
+		for(int id = 0; id < size; id++) {
+			if(nullable[id]) {
+				nulling.clear();
+				nulling.add(nullingRules[id][0]);
+				for(Rule r : rules[id]) {
+					if(r != nullingRules[id][0] && nullable(r.right, 0)) {
+						nulling.add(r);
+					}
+				}
+				
+				nullingRules[id] = nulling.toArray(new Rule[nulling.size()]);
+			}
+		}
+		
+		closures = new Category[size][];
+		nonPreterminalClosures = new Category[size][];
+		int[] marks = new int[size];
+		for(int id = 0; id < size; id++) {
+			closures[id] = closure(id, rules, marks, 2 * id + 1);
+			nonPreterminalClosures[id]
+				= closure(id, nonPreterminals, marks, 2 * id + 2);
+		}
+		
+		// FIRST sets by category number, iterated until nothing changes
+		first = new BitSet[size];
+		for(int id = 0; id < size; id++) {
+			if(rules[id].length > 0) {
+				first[id] = new BitSet();
+			}
+		}
+		
+		changed = true;
+		while(changed) {
+			changed = false;
+			for(int id = 0; id < size; id++) {
+				for(Rule r : rules[id]) {
+					for(Category f : r.right) {
+						if(f.terminal) {
+							if(!first[id].get(f.id)) {
+								first[id].set(f.id);
+								changed = true;
+							}
+						}
+						else if(f.id < size && first[f.id] != null) {
+							int before = first[id].cardinality();
+							first[id].or(first[f.id]);
+							changed |= (first[id].cardinality() != before);
+						}
+						
+						if(!isNullable(f)) {
+							break;
+						}
+					}
+				}
+			}
+		}
+		
+		Map<String, List<Integer>> folded = new HashMap<String, List<Integer>>();
+		for(Category t : grammar.terminals.values()) {
+			if(t.name != null) {
+				String f = CompiledGrammar.fold(t.name);
+				List<Integer> ids = folded.get(f);
+				if(ids == null) {
+					ids = new ArrayList<Integer>(1);
+					folded.put(f, ids);
+				}
+				
+				ids.add(t.id);
+			}
+		}
+		
+		foldedTerminals = new HashMap<String, int[]>(folded.size() * 4 / 3 + 1);
+		for(Map.Entry<String, List<Integer>> e : folded.entrySet()) {
+			int[] ids = new int[e.getValue().size()];
+			for(int i = 0; i < ids.length; i++) {
+				ids[i] = e.getValue().get(i);
+			}
+			
+			foldedTerminals.put(e.getKey(), ids);
+		}
+	}
+	
+	/**
+	 * Helper for the constructor that finds the categories predicted for the
+	 * category with the specified number, using the given rule table.
+	 * Categories reached are marked with <code>mark</code> so that the same
+	 * array of marks can be reused for every category.
+	 */
+	private Category[] closure(int id, Rule[][] table, int[] marks, int mark) {
+		if(table[id].length == 0) {
+			return NO_CATEGORIES;
+		}
+		
+		List<Category> reached = new ArrayList<Category>();
+		reached.add(grammar.categories.get(id));
+		marks[id] = mark;
+		
+		for(int i = 0; i < reached.size(); i++) { // grows while looping
+			for(Rule r : table[reached.get(i).id]) {
+				for(Category first : r.right) { // past nullable categories
+					if(first.id < table.length && table[first.id].length > 0
+							&& marks[first.id] != mark) {
+						marks[first.id] = mark;
+						reached.add(first);
+					}
+					
+					if(!isNullable(first)) {
+						break;
+					}
+				}
+			}
+		}
+		
+		return reached.toArray(new Category[reached.size()]);
+	}
+	
+	/**
+	 * Tests whether every category in the specified array, starting at the
+	 * given position, is nullable.
+	 */
+	boolean nullable(Category[] categories, int from) {
+		for(int i = from; i < categories.length; i++) {
+			if(!isNullable(categories[i])) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Helper for the constructor.
+	 */
+	private static void addWord(Map<String, List<Rule>> words, String word,
+			Rule rule) {
+		List<Rule> r = words.get(word);
+		if(r == null) {
+			r = new ArrayList<Rule>(1);
+			words.put(word, r);
+		}
+		
+		r.add(rule);
+	}
+	
+	/**
+	 * Helper for the constructor.
+	 */
+	private static Map<String, Rule[]> toArrays(Map<String, List<Rule>> words) {
+		Map<String, Rule[]> lex = new HashMap<String, Rule[]>(
+				words.size() * 4 / 3 + 1);
+		for(Map.Entry<String, List<Rule>> e : words.entrySet()) {
+			List<Rule> r = e.getValue();
+			lex.put(e.getKey(), r.toArray(new Rule[r.size()]));
+		}
+		
+		return lex;
+	}
+	
+	/**
+	 * Folds the case of a token for looking it up in the lexicon.
+	 */
+	static String fold(String token) {
+		return token.toLowerCase(Locale.ENGLISH);
+	}
+	
+	/**
+	 * Gets the grammar this compiled grammar was compiled from.
+	 */
+	public Grammar getGrammar() {
+		return grammar;
+	}
+	
+	/**
+	 * Gets the rules with the specified left side category, in the order they
+	 * were added to the grammar.
+	 * @return An unmodifiable list of rules, empty if the grammar had no rules
+	 * for <code>left</code> when it was compiled.
+	 */
+	public List<Rule> getRules(Category left) {
+		Rule[] r = getRuleArray(left, true);
+		return (r.length == 0) ? Collections.<Rule>emptyList()
+			: Collections.unmodifiableList(Arrays.asList(r));
+	}
+	
+	/**
+	 * Tests whether parsing with this grammar requires prediction for
+	 * preterminals. This is the case when some rule has a terminal on its
+	 * right side along with other categories, since such a rule can not be
+	 * predicted just in time when a token is scanned.
+	 * @see ParserOption#PREDICT_FOR_PRETERMINALS
+	 */
+	public boolean needsPreterminalPrediction() {
+		return (incompatibleRule != null);
+	}
+	
+	/**
+	 * Tests whether the specified category is nullable, that is, whether it
+	 * can produce the empty string.
+	 * @return <code>true</code> iff <code>category</code> is not a terminal
+	 * and has an {@link Rule#isEmpty() empty rule}, or a rule whose right side
+	 * consists only of nullable categories.
+	 */
+	public boolean isNullable(Category category) {
+		if(category.terminal) {
+			return false;
+		}
+		
+		int i = indexOf(category);
+		return (i >= 0 && nullable[i]);
+	}
+	
+	/**
+	 * Gets the rules by which the specified nullable category produces the
+	 * empty string, those whose right sides are empty or consist only of
+	 * nullable categories. The first nulling rule's right side is either
+	 * empty or consists of categories that become nullable by rules found
+	 * before it, so that following first nulling rules always ends with empty
+	 * rules; the others may lead back to the category itself.
+	 * @return The nulling rules, or <code>null</code> if
+	 * <code>category</code> is not nullable.
+	 */
+	Rule[] getNullingRules(Category category) {
+		int i = indexOf(category);
+		return (i < 0) ? null : nullingRules[i];
+	}
+	
+	/**
+	 * Gets the index of the specified category in the rule arrays.
+	 * @return The category's number in the grammar's table, or
+	 * <code>-1</code> if it has no rules.
+	 */
+	int indexOf(Category category) {
+		Category c = (category.grammar == grammar)
+			? category : grammar.lookup(category);
+		return (c == null || c.id >= rules.length) ? -1 : c.id;
+	}
+	
+	/**
+	 * Gets the rules with the specified left side category to be predicted.
+	 * @param preterminals Whether to include preterminal rules.
+	 * @return An array of rules that must not be modified, possibly
+	 * zero-length.
+	 */
+	Rule[] getRuleArray(Category left, boolean preterminals) {
+		int i = indexOf(left);
+		return (i < 0) ? NO_RULES
+			: preterminals ? rules[i] : nonPreterminals[i];
+	}
+	
+	/**
+	 * Gets the categories whose rules are to be predicted for the specified
+	 * category, starting with the category itself.
+	 * @param preterminals Whether preterminal rules are predicted.
+	 * @return An array of categories that must not be modified, possibly
+	 * zero-length if there are no rules to predict.
+	 */
+	Category[] getClosure(Category category, boolean preterminals) {
+		int i = indexOf(category);
+		return (i < 0) ? NO_CATEGORIES
+			: preterminals ? closures[i] : nonPreterminalClosures[i];
+	}
+	
+	/**
+	 * Gets the numbers of the terminals in this grammar that match the
+	 * specified token.
+	 * @param ignoreCase Whether to also match terminals whose case differs.
+	 * @return An array of category numbers that must not be modified,
+	 * zero-length if no terminal matches.
+	 */
+	int[] getTerminals(String token, boolean ignoreCase) {
+		if(ignoreCase) {
+			int[] t = (token == null) ? null
+				: foldedTerminals.get(CompiledGrammar.fold(token));
+			return (t == null) ? NO_TERMINALS : t;
+		}
+		
+		Category t = grammar.terminals.get(token);
+		return (t == null) ? NO_TERMINALS : new int[] {t.id};
+	}
+	
+	/**
+	 * Tests whether a string derived from the specified category can begin
+	 * with one of the given terminals.
+	 * @param terminals Terminal numbers, as returned by
+	 * {@link #getTerminals(String, boolean)}.
+	 */
+	boolean canBegin(Category category, int[] terminals) {
+		int i = indexOf(category);
+		return (i >= 0 && (nullable[i] // whatever follows can begin with them
+				|| startsWith(i, terminals)));
+	}
+	
+	/**
+	 * Tests whether the FIRST set of the category with the specified number
+	 * contains one of the given terminals.
+	 */
+	private boolean startsWith(int id, int[] terminals) {
+		if(first[id] != null) {
+			for(int t : terminals) {
+				if(first[id].get(t)) {
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Tests whether a string derived from the specified rule can begin with
+	 * one of the given terminals.
+	 * @see #canBegin(Category, int[])
+	 */
+	boolean canBegin(Rule rule, int[] terminals) {
+		for(Category f : rule.right) {
+			if(f.terminal) {
+				for(int t : terminals) {
+					if(f.id == t) {
+						return true;
+					}
+				}
+				
+				return false;
+			}
+			
+			int i = indexOf(f);
+			if(i < 0) {
+				return false;
+			}
+			if(startsWith(i, terminals)) {
+				return true;
+			}
+			if(!nullable[i]) {
+				return false;
+			}
+		}
+		
+		return true; // nullable rules can be followed by anything
+	}
+	
+	/**
+	 * Gets the singleton preterminal rules that produce the specified token,
+	 * in the order they were added to the grammar.
+	 * @param ignoreCase Whether to also find rules producing the token with
+	 * its case changed.
+	 * @return An array of rules that must not be modified, possibly
+	 * zero-length.
+	 */
+	Rule[] getLexicalRules(String token, boolean ignoreCase) {
+		Rule[] r = ignoreCase ? foldedLexicon.get(CompiledGrammar.fold(token))
+			: lexicon.get(token);
+		return (r == null) ? NO_RULES : r;
+	}
+	
+	/**
+	 * Gets a singleton preterminal rule with the specified left category,
+	 * producing the given string token.
+	 * @return A preterminal rule of the form <code>left -> token</code> if
+	 * any exists within this grammar, or <code>null</code> if none exists.
+	 * @see Grammar#getSingletonPreterminal(Category, String, boolean)
+	 */
+	Rule getSingletonPreterminal(Category left, String token,
+			boolean ignoreCase) {
+		for(Rule r : getLexicalRules(token, ignoreCase)) {
+			if(r.left.equals(left)) {
+				return r;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Gets a string representation of this compiled grammar.
+	 */
+	@Override
+	public String toString() {
+		return "[" + getClass().getSimpleName() + ": grammar "
+			+ grammar.name + "]";
+	}
+}
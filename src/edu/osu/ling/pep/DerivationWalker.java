@@ -0,0 +1,163 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Computes a value for the derivations of edges, bottom up, without
+ * recursion.
+ * <p>
+ * The value for an edge stands for the sequences of children of the
+ * categories before the dot in its dotted rule. It is the
+ * {@link #add(Object, Object) sum}, over the edge's
+ * {@link Edge#getDerivations() derivations}, of the value for the edge each
+ * derivation was advanced from, {@link #extend(Object, Edge, Object)
+ * extended} by the basis it was advanced over. Each edge's value is computed
+ * once and remembered, so edges shared between derivations are only visited
+ * once, and an explicit stack is used instead of the call stack so that
+ * deep derivations do not overflow it.
+ * <p>
+ * A derivation that leads back to an edge whose value is still being
+ * computed, as happens for cyclic grammars, contributes nothing.
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ * @since 0.5
+ * @see ParseTree#newParseTrees(Edge)
+ * @see Parse#countParseTrees()
+ */
+abstract class DerivationWalker<T> {
+	private Map<Edge, T> values = new IdentityHashMap<Edge, T>();
+	
+	/**
+	 * Gets the value for no derivations at all.
+	 */
+	abstract T none();
+	
+	/**
+	 * Gets the value for the single, empty sequence of children, as for a
+	 * predicted edge.
+	 */
+	abstract T unit();
+	
+	/**
+	 * Extends the value for some sequences of children by a basis edge.
+	 * @param basisValue The value for <code>basis</code> if it is passive,
+	 * or <code>null</code> if it was scanned.
+	 */
+	abstract T extend(T prefix, Edge basis, T basisValue);
+	
+	/**
+	 * Adds the values for two alternative derivations.
+	 */
+	abstract T add(T value, T alternative);
+	
+	/**
+	 * Gets the value for the specified edge, computing it and the values it
+	 * depends on if they are not known yet.
+	 */
+	T valueOf(Edge edge) {
+		T value = values.get(edge);
+		if(value != null) {
+			return value;
+		}
+		
+		Set<Edge> started
+			= Collections.newSetFromMap(new IdentityHashMap<Edge, Boolean>());
+		LinkedList<Edge> stack = new LinkedList<Edge>();
+		stack.push(edge);
+		
+		while(!stack.isEmpty()) {
+			Edge e = stack.peek();
+			if(values.containsKey(e)) { // pushed more than once
+				stack.pop();
+			}
+			else if(started.add(e)) { // first visit: values it depends on
+				for(Edge d : e.getDerivations()) {
+					if(d.predecessor == null) { // predicted, or created with bases
+						for(Edge b : d.bases) {
+							push(stack, started, b, false);
+						}
+					}
+					else {
+						push(stack, started, d.predecessor, true);
+						push(stack, started, d.getBasis(), false);
+					}
+				}
+			}
+			else { // second visit: everything it depends on is done
+				stack.pop();
+				values.put(e, compute(e));
+			}
+		}
+		
+		return values.get(edge);
+	}
+	
+	/**
+	 * Helper for valueOf that pushes an edge whose value is still needed.
+	 * Scanned bases have no value of their own; edges that have been started
+	 * but are not done are still being computed further down the stack.
+	 */
+	private void push(LinkedList<Edge> stack, Set<Edge> started, Edge e,
+			boolean predecessor) {
+		if((predecessor || e.isPassive()) && !values.containsKey(e)
+				&& !started.contains(e)) {
+			stack.push(e);
+		}
+	}
+	
+	/**
+	 * Helper for valueOf that computes an edge's value from the values it
+	 * depends on.
+	 */
+	private T compute(Edge edge) {
+		T value = none();
+		for(Edge d : edge.getDerivations()) {
+			T v;
+			if(d.predecessor == null) {
+				v = unit();
+				for(Edge b : d.bases) {
+					v = extend(v, b, basisValue(b));
+				}
+			}
+			else {
+				Edge b = d.getBasis();
+				v = extend(current(d.predecessor), b, basisValue(b));
+			}
+			
+			value = add(value, v);
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Helper for compute.
+	 */
+	private T basisValue(Edge basis) {
+		return basis.isPassive() ? current(basis) : null;
+	}
+	
+	/**
+	 * Helper for compute that gets the value known for an edge, treating
+	 * one that is still being computed as having no derivations.
+	 */
+	private T current(Edge e) {
+		T v = values.get(e);
+		return (v == null) ? none() : v;
+	}
+}
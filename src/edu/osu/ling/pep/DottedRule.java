@@ -22,6 +22,13 @@ package edu.osu.ling.pep;
  * <code>null</code> when processing has fully covered the underlying rule.
  * {@link Edge Edges} test the active category of dotted rules to determine
  * when an edge is active or passive.
+ * <p>
+ * The dotted rules for every dot position in a rule are built together, the
+ * first time the rule is {@link Edge#predictFor(Rule, int) predicted} or
+ * {@link Grammar#addRule(Rule) added to a grammar}, and each is linked to the
+ * one for the next position. Advancing the dot of one of these dotted rules
+ * therefore does not create a new dotted rule, and an Earley parser's edges
+ * for the same rule and position share the same dotted rule.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 1796 $
  * @see Rule
@@ -30,6 +37,8 @@ package edu.osu.ling.pep;
 public class DottedRule extends Rule {
 	int position;
 	Category activeCategory;
+	DottedRule next;
+	private int hashCode;
 	
 	/**
 	 * Creates a new dotted rule for the given rule, with a dot position at
@@ -51,7 +60,7 @@ public class DottedRule extends Rule {
 	 * {@link Rule#getRight() right side sequence} in <code>rule</code>. 
 	 */
 	public DottedRule(Rule rule, int position) {
-		super(rule.left, rule.right);
+		super(rule); // already checked
 		
 		if(position < 0 || position > right.length) {
 			throw new IndexOutOfBoundsException(
@@ -62,22 +71,53 @@ public class DottedRule extends Rule {
 		
 		// determine active category
 		activeCategory = (position < right.length) ? right[position] : null;
+		
+		hashCode = (super.hashCode() * (31 + position));
 	}
 	
 	/**
-	 * Creates and returns a new dotted rule exactly like the one provided 
-	 * except that its {@link #getPosition() dot position} is advanced by
-	 * <code>1</code>.
+	 * Gets the dotted rule for the specified rule with its dot at position
+	 * <code>0</code>, building and linking the dotted rules for all of the
+	 * rule's positions if this has not already been done.
+	 * @see #advanceDot(DottedRule)
+	 * @since 0.5
+	 */
+	static DottedRule initial(Rule rule) {
+		DottedRule dr = rule.dottedRule;
+		if(dr == null) {
+			for(int i = rule.right.length; i >= 0; i--) {
+				DottedRule d = new DottedRule(rule, i);
+				d.next = dr;
+				dr = d;
+			}
+			
+			rule.dottedRule = dr;
+		}
+		
+		return dr;
+	}
+	
+	/**
+	 * Gets a dotted rule exactly like the one provided except that its
+	 * {@link #getPosition() dot position} is advanced by <code>1</code>. If
+	 * the dotted rule was built along with the others for its rule, the
+	 * dotted rule for the next position is returned without creating a new
+	 * one.
 	 * @param dottedRule The dotted rule whose dot position should be advanced.
 	 * @throws IndexOutOfBoundsException If thw dotted rule's dot position
 	 * is already at the end of its right side.
-	 * @return A new dotted rule wrapping this rule with its position
+	 * @return A dotted rule wrapping this rule with its position
 	 * incremented.
 	 * @see #DottedRule(Rule, int)
 	 * @since 0.2
 	 */
 	public static DottedRule advanceDot(DottedRule dottedRule) {
-		return new DottedRule(dottedRule, dottedRule.position + 1);
+		if(dottedRule.next == null) { // not linked, or at end of right side
+			dottedRule.next
+				= new DottedRule(dottedRule, dottedRule.position + 1);
+		}
+		
+		return dottedRule.next;
 	}
 	
 	/**
@@ -101,7 +141,7 @@ public class DottedRule extends Rule {
 			throw new IllegalArgumentException("seed is a terminal: " + seed);
 		}
 		
-		return new DottedRule(new Rule(Category.START, seed), 0);
+		return DottedRule.initial(new Rule(Category.START, seed));
 	}
 	
 	/**
@@ -136,8 +176,9 @@ public class DottedRule extends Rule {
 	 */
 	@Override
 	public boolean equals(Object obj) {
-		return (obj instanceof DottedRule && super.equals(obj)
-				&& position == ((DottedRule)obj).position);
+		return this == obj || (obj instanceof DottedRule
+				&& position == ((DottedRule)obj).position
+				&& super.equals(obj));
 	}
 
 	/**
@@ -147,7 +188,7 @@ public class DottedRule extends Rule {
 	 */
 	@Override
 	public int hashCode() {
-		return (super.hashCode() * (31 + position));
+		return hashCode; // computed once, as rules do not change
 	}
 
 	/**
@@ -11,12 +11,18 @@
 package edu.osu.ling.pep;
 
 import static edu.osu.ling.pep.ParserOption.IGNORE_TERMINAL_CASE;
+import static edu.osu.ling.pep.ParserOption.LEO_RIGHT_RECURSION;
+import static edu.osu.ling.pep.ParserOption.LOOKAHEAD_PREDICTION;
+import static edu.osu.ling.pep.ParserOption.PACK_FOREST;
 import static edu.osu.ling.pep.ParserOption.PREDICT_FOR_PRETERMINALS;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -58,12 +64,17 @@ import java.util.Set;
  * A parser instance can be configured using
  * {@link #setOption(ParserOption, Boolean)}. When no configuration is
  * done, a parser just uses the {@link ParserOption#getDefaultValue()
- * default values} of options. Note, however, that instances of this class are
- * not synchronized. If it is possible that a thread could be calling
- * both {@link #parse(Iterable, Category)} or
- * {@link #recognize(Iterable, Category)}
- * and another thread could be setting options, steps should be taken by the
- * developer to ensure that these do not happen concurrently.
+ * default values} of options.
+ * <p>
+ * Any number of threads can parse with the same parser at once. Each parse
+ * takes the parser's grammar, in its {@link Grammar#compile() compiled} form,
+ * along with its listener and options, when it starts, and keeps everything
+ * else it needs in a context of its own. Setting an option replaces the
+ * parser's options as a whole, so a parse sees either all or none of the
+ * changes made by another thread, and options set while a parse is underway
+ * only take effect for the parses started afterward. The grammar itself is
+ * not synchronized, though, so rules should not be added to it while it is
+ * being used for parsing.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 3115 $
  * @see Grammar
@@ -71,11 +82,9 @@ import java.util.Set;
  * @see ParserOption
  */
 public class EarleyParser {
-	Grammar grammar;
-	ParserListener listener;
-	Map<ParserOption, Boolean> options;
-	
-	private boolean predictPreterm, ignoreCase;
+	volatile Grammar grammar;
+	volatile ParserListener listener;
+	volatile Map<ParserOption, Boolean> options; // replaced, never changed
 	
 	/**
 	 * Creates a new Earley parser for the specified grammar.
@@ -155,7 +164,8 @@ public class EarleyParser {
 	 * value} of the specified option.
 	 */
 	public boolean containsOption(ParserOption optionName) {
-		return (options != null && options.containsKey(optionName));
+		Map<ParserOption, Boolean> o = options;
+		return (o != null && o.containsKey(optionName));
 	}
 	
 	/**
@@ -166,6 +176,14 @@ public class EarleyParser {
 	 * not been set.
 	 */
 	public Boolean getOption(ParserOption optionName) {
+		return EarleyParser.getOption(options, optionName);
+	}
+	
+	/**
+	 * Helper for getOption that looks up an option in a map of options.
+	 */
+	private static Boolean getOption(Map<ParserOption, Boolean> options,
+			ParserOption optionName) {
 		if(options == null) {
 			return optionName.defaultValue;
 		}
@@ -175,7 +193,9 @@ public class EarleyParser {
 	}
 	
 	/**
-	 * Sets an option on this parser instance with the specified name.
+	 * Sets an option on this parser instance with the specified name. The
+	 * parser's options are replaced by a copy that includes the new value,
+	 * so parses already underway are not affected.
 	 * @param optionName The option to set.
 	 * @param value The new value for this option.
 	 * @return The former value for the specified option, or the
@@ -193,13 +213,18 @@ public class EarleyParser {
 			throw new IllegalArgumentException("null value");
 		}
 		
-		if(options == null) {
-			options = new EnumMap<ParserOption, Boolean>(
-					ParserOption.class);
+		Boolean oldValue;
+		synchronized(this) { // so that no concurrent change is lost
+			Map<ParserOption, Boolean> o
+				= new EnumMap<ParserOption, Boolean>(ParserOption.class);
+			if(options != null) {
+				o.putAll(options);
+			}
+			
+			oldValue = o.put(optionName, value);
+			options = o;
 		}
 		
-		Boolean oldValue = options.put(optionName, value);
-		
 		if(oldValue == null) {
 			oldValue = optionName.defaultValue;
 		}
@@ -252,6 +277,22 @@ public class EarleyParser {
 		return parse(tokens, seed).getStatus();
 	}
 	
+	/**
+	 * Tests whether this parser recognizes a given string for the specified
+	 * seed category, using the specified workspace. Because only the status
+	 * is returned, the chart filled in is the workspace's own, and is reused
+	 * the next time the workspace is used for recognizing.
+	 * @param workspace A workspace not in use by any other thread.
+	 * @see #recognize(Iterable, Category)
+	 * @see #parse(Iterable, Category, ParseWorkspace)
+	 * @since 0.5
+	 */
+	public Status recognize(Iterable<String> tokens, Category seed,
+			ParseWorkspace workspace) throws PepException {
+		return parse(tokens, seed, workspace,
+				workspace.chart(EarleyParser.capacity(tokens))).getStatus();
+	}
+	
 	/**
 	 * Convenience method for parsing a string of tokens separated by spaces.
 	 * @param tokens The string of tokens to parse.
@@ -309,185 +350,474 @@ public class EarleyParser {
 	 */
 	public Parse parse(Iterable<String> tokens, Category seed) 
 			throws PepException {
-		Chart chart = new Chart();
-		Integer index = new Integer(0);
+		return parse(tokens, seed, new ParseWorkspace());
+	}
+	
+	/**
+	 * Gets a parse for the specified string and seed category, using the
+	 * specified workspace for the storage that is only needed while
+	 * parsing. A thread that parses many strings can keep a workspace and
+	 * pass it in each time, so that this storage is not reallocated for
+	 * every string. Only the chart, which belongs to the parse returned, is
+	 * allocated anew.
+	 * @param workspace A workspace not in use by any other thread.
+	 * @see #parse(Iterable, Category)
+	 * @since 0.5
+	 */
+	public Parse parse(Iterable<String> tokens, Category seed,
+			ParseWorkspace workspace) throws PepException {
+		return parse(tokens, seed, workspace,
+				new Chart(EarleyParser.capacity(tokens)));
+	}
+	
+	/**
+	 * Gets the number of indices to make room for in a chart for the
+	 * specified tokens. Charts are sized for the input when its length is
+	 * known in advance.
+	 */
+	private static int capacity(Iterable<String> tokens) {
+		return (tokens instanceof Collection<?>)
+			? ((Collection<?>)tokens).size() + 1 : Chart.DEFAULT_CAPACITY;
+	}
+	
+	/**
+	 * Helper for the parse and recognize methods that fills in the
+	 * specified chart.
+	 */
+	private Parse parse(Iterable<String> tokens, Category seed,
+			ParseWorkspace workspace, Chart chart) throws PepException {
+		if(workspace == null) {
+			throw new NullPointerException("null workspace");
+		}
+		
+		int index = 0;
 		
 		Parse parse = new Parse(seed, chart);
+		Context context = newContext(chart, workspace);
 		
 		if(seed == null) {
-			fireParseError(parse, index, "invalid seed category: " + seed);
+			fireParseError(context, parse, index,
+					"invalid seed category: " + seed);
 		}
 		else if(tokens == null || !tokens.iterator().hasNext()) {
-			fireParseError(parse, index, "null or empty tokens");
+			fireParseError(context, parse, index, "null or empty tokens");
 		}
 		else {
-			// get and cache boolean values
-			predictPreterm = getOption(PREDICT_FOR_PRETERMINALS);
-			ignoreCase = getOption(IGNORE_TERMINAL_CASE);
+			if(context.leo && !context.packForest) { // Leo items need a forest
+				context.packForest = true;
+				fireParseMessage(context, parse, "setting " + PACK_FOREST.name()
+					+ " to true; required by " + LEO_RIGHT_RECURSION.name());
+			}
 			
-			if(!predictPreterm) {
-				// check for rules that don't work if not predicting preterms
-				for(Rule r : grammar.getAllRules()) {
-					if(r.isPreterminal() && r.right.length > 1) {
-						predictPreterm = true;
-						fireParseMessage(parse, "setting "
-							+ PREDICT_FOR_PRETERMINALS.name() + " to true;"
-							+ " grammar contains incompatible rule: " + r);
-						break;
-					}
-				}
+			// check for rules that don't work if not predicting preterms
+			CompiledGrammar compiled = context.compiled;
+			if(!context.predictPreterm
+					&& compiled.needsPreterminalPrediction()) {
+				context.predictPreterm = true;
+				fireParseMessage(context, parse, "setting "
+					+ PREDICT_FOR_PRETERMINALS.name() + " to true;"
+					+ " grammar contains incompatible rule: "
+					+ compiled.incompatibleRule);
 			}
 			
 			Iterator<String> tokenIterator = tokens.iterator();
 			
-			Edge seedEdge = new Edge(DottedRule.startRule(seed), index);
+			// use the grammar's own seed category, if it has one
+			Category s = compiled.grammar.lookup(seed);
+			Edge seedEdge = new Edge(DottedRule.startRule(
+					(s == null) ? seed : s), index);
 			chart.addEdge(index, seedEdge); // seed parser
-			fireParserSeeded(index, seedEdge); // notify listeners
-			while(tokenIterator.hasNext()) {
+			fireParserSeeded(context, index, seedEdge); // notify listeners
+			advanceOverNullables(context, index, seedEdge, false);
+			String token = tokenIterator.next(); // get first token
+			predict(context, index, token); // make predictions at first index
+			boolean more = true;
+			while(more) {
+				parse.tokens.add(token); // add to tokens in parse
+				
+				// read ahead, as the next token is needed for predicting
+				more = tokenIterator.hasNext();
+				String next = more ? tokenIterator.next() : null;
+				
 				try {
-					predict(chart, index); // make predictions at this index
-						
-					String token = tokenIterator.next(); // get next token
-					parse.tokens.add(token); // add to tokens in parse
-					
-					scan(chart, index++, token); // scan and increment index
-					complete(chart, index); // complete for next index
+					scan(context, index++, token); // scan and increment index
+					complete(context, index); // complete for next index
 									
-					// finish filling chart by predicting for final index
-					predict(chart, index);
+					// finish filling chart by predicting for next index, unless
+					// looking ahead and there is nothing left to look ahead to
+					if(more || !context.lookahead) {
+						predict(context, index, next);
+					}
 				}
 				catch(PepException pe) {
-					fireParseError(parse, index, pe); // may re-throw exception
+					fireParseError(context, parse, index, pe); // may re-throw
 				}
+				
+				token = next;
 			}
 		}
 		
-		fireParseComplete(parse); // notify listener		
+		fireParseComplete(context, parse); // notify listener		
 		return parse; // return completed parse
 	}
 	
 	/**
-	 * Makes predictions in the specified chart at the given index.
-	 * @param chart The chart to fill with predictions at <code>index</code>.
+	 * Makes a context for a new parse that fills the specified chart, using
+	 * this parser's current grammar, listener, and options.
+	 * @since 0.5
+	 */
+	Context newContext(Chart chart, ParseWorkspace workspace) {
+		Context context = new Context(chart, workspace, listener);
+		context.compiled = grammar.compile();
+		
+		// get and cache boolean values from one set of options
+		Map<ParserOption, Boolean> o = options;
+		context.predictPreterm
+			= EarleyParser.getOption(o, PREDICT_FOR_PRETERMINALS);
+		context.ignoreCase = EarleyParser.getOption(o, IGNORE_TERMINAL_CASE);
+		context.packForest = EarleyParser.getOption(o, PACK_FOREST);
+		context.leo = EarleyParser.getOption(o, LEO_RIGHT_RECURSION);
+		context.lookahead = EarleyParser.getOption(o, LOOKAHEAD_PREDICTION);
+		
+		return context;
+	}
+	
+	/**
+	 * The state of a single call to {@link EarleyParser#parse(Iterable,
+	 * Category)}: the chart being filled, the workspace used while filling
+	 * it, the compiled grammar and listener the parse started with, and the
+	 * values of the options it uses. Keeping these apart from the parser
+	 * lets many threads parse with the same parser at once.
+	 * @since 0.5
+	 */
+	static class Context {
+		Chart chart;
+		ParseWorkspace workspace;
+		CompiledGrammar compiled;
+		ParserListener listener;
+		boolean predictPreterm, ignoreCase, packForest, leo, lookahead;
+		
+		Context(Chart chart, ParseWorkspace workspace,
+				ParserListener listener) {
+			this.chart = chart;
+			this.workspace = workspace;
+			this.listener = listener;
+		}
+	}
+	
+	/**
+	 * Makes predictions in a parse's chart at the given index.
+	 * @param context The parse whose chart is to be filled with predictions
+	 * at <code>index</code>.
+	 * @param index The string index to make predictions at.
+	 * @see #predict(Context, int, String)
+	 */
+	void predict(Context context, int index) {
+		predict(context, index, null);
+	}
+	
+	/**
+	 * Makes predictions in a parse's chart at the given index, looking
+	 * ahead to the specified token if
+	 * {@link ParserOption#LOOKAHEAD_PREDICTION looking ahead}.
+	 * @param context The parse whose chart is to be filled with predictions
+	 * at <code>index</code>.
 	 * @param index The string index to make predictions at.
+	 * @param token The token at <code>index</code>. If this is
+	 * <code>null</code>, predictions are not filtered.
+	 * @since 0.5
 	 */
-	void predict(Chart chart, Integer index) {
-		if(chart.containsEdges(index)) { // any edges at this index?
+	void predict(Context context, int index, String token) {
+		Chart chart = context.chart;
+		Set<Edge> edges = chart.edgeSet(index);
+		if(edges != null) { // any edges at this index?
+			CompiledGrammar compiled = context.compiled;
+			boolean predictPreterm = context.predictPreterm;
+			// the terminals the predicted rules must be able to begin with
+			int[] terminals = (context.lookahead && token != null)
+				? compiled.getTerminals(token, context.ignoreCase) : null;
+			// mark the categories whose rules have been predicted here so far
+			ParseWorkspace workspace = context.workspace;
+			workspace.startPredicting(compiled.rules.length);
+			
 			// avoid concurrently modifying chart by getting array
-			Set<Edge> edges = chart.getEdges(index);
-			LinkedList<Edge> predictStack = new LinkedList<Edge>();
-			for(Edge edge : edges.toArray(new Edge[edges.size()])) {
-				predictStack.push(edge);
+			int size = edges.size();
+			Edge[] array = workspace.edges(edges);
+			for(int i = 0; i < size; i++) {
+				Category active = array[i].dottedRule.activeCategory; // null if passive
 				
-				while(!predictStack.isEmpty()) {
-					Edge e = predictStack.pop();
-					Category active = e.dottedRule.activeCategory; // null if passive
-					
-					if(active != null && grammar.containsRules(active)) {
-						// get all rules with the active category on the left
-						for(Rule rule : grammar.getRules(active)) {
-							if(predictPreterm || !rule.isPreterminal()) {
-								// only predict for rules that aren't preterminals to avoid
-								// filling up the chart with entries for every terminal
+				if(active != null) {
+					// the closure of the active category covers the categories of
+					// the predicted edges, as well as those of their predictions
+					for(Category c : compiled.getClosure(active, predictPreterm)) {
+						int id = compiled.indexOf(c); // no rules to predict if -1
+						if(id >= 0 && workspace.predict(id) && (terminals == null
+								|| compiled.canBegin(c, terminals))) {
+							// get all rules with the category on the left, but only
+							// those that aren't preterminals unless predicting them, to
+							// avoid filling up the chart with entries for every terminal
+							for(Rule rule : compiled.getRuleArray(c, predictPreterm)) {
+								if(terminals != null
+										&& !compiled.canBegin(rule, terminals)) {
+									continue; // can't begin with the next token
+								}
 								
 								// make new edge at index with dotted rule at position 0
 								Edge newEdge = Edge.predictFor(rule, index);
 								// only predict for edges the chart did not already contain
 								if(chart.addEdge(index, newEdge)) {
-									fireEdgePredicted(index, newEdge); // notify listener
-									predictStack.push(newEdge);
+									// notify listener
+									fireEdgePredicted(context, index, newEdge);
+									// the closure also covers what is predicted
+									// for the edges advanced over nullables
+									advanceOverNullables(context, index, newEdge,
+											false);
 								}
 							}
 						}
 					}
 				}
 			}
+			
+			workspace.release(array, size);
 		}
 	}
 	
 	/**
 	 * Handles a token scanned from the input string, making completions (and
 	 * adding edges to the chart) as needed.
-	 * @param chart The chart to fill.
+	 * @param context The parse whose chart is to be filled.
 	 * @param index The start index of the scan.
 	 * @param token The token that was scanned.
 	 * @throws PepException If <code>token</code> is </code>null</code>.
 	 */
-	void scan(Chart chart, Integer index, String token) throws PepException {
+	void scan(Context context, int index, String token) throws PepException {
 		if(token == null) {
 			throw new PepException("null token at index " + index);
 		}
 		
-		if(chart.containsEdges(index)) { // any predictions at this index?
-			Set<Edge> edges = chart.getEdges(index);
-			// just-in-time prediction
-			if(!predictPreterm) { // using array avoids comodification problems 
-				for(Edge edge : edges.toArray(new Edge[edges.size()])) {
-					if(!edge.isPassive()) {
-						Rule r = grammar.getSingletonPreterminal(
-							edge.dottedRule.activeCategory, token, ignoreCase);
-						if(r != null) {
-							Edge pt = Edge.predictFor(r, index);
-							if(chart.addEdge(index, pt)) {
-								fireEdgePredicted(index, pt);
-							}
+		Chart chart = context.chart;
+		Set<Edge> edges = chart.edgeSet(index);
+		if(edges != null) { // any predictions at this index?
+			boolean ignoreCase = context.ignoreCase;
+			// just-in-time prediction: look up the rules producing the token
+			// once, keeping those for categories some edge here is waiting for
+			if(!context.predictPreterm) {
+				for(Rule r : context.compiled.getLexicalRules(token, ignoreCase)) {
+					if(chart.getWaitingEdges(index, r.left) != null) {
+						Edge pt = Edge.predictFor(r, index);
+						if(chart.addEdge(index, pt)) {
+							fireEdgePredicted(context, index, pt);
 						}
 					}
 				}
 			}
 			
-			for(Edge edge : edges.toArray(new Edge[edges.size()])) {
+			int successor = index + 1; // save next index
+			int size = edges.size();
+			Edge[] array = context.workspace.edges(edges);
+			for(int i = 0; i < size; i++) {
+				Edge edge = array[i];
 				// completions for active edges only
 				if(edge.canScan(token, ignoreCase)) {
-					Edge newEdge = Edge.scan(edge, token, ignoreCase);
-					Integer successor // save next index
-						= new Integer(index.intValue() + 1); 
-					if(chart.addEdge(successor, newEdge)) {
-						fireEdgeScanned(successor, newEdge);
+					Edge newEdge = context.packForest ? Edge.pack(edge, edge)
+						: Edge.scan(edge, token, ignoreCase);
+					if(addEdge(context, successor, newEdge)) {
+						fireEdgeScanned(context, successor, newEdge);
+						advanceOverNullables(context, successor, newEdge, false);
 					}
 				}
 			}
+			
+			context.workspace.release(array, size);
 		}
 	}
 	
 	/**
-	 * Makes completions in the specified chart at the given index.
-	 * @param chart The chart to fill.
+	 * Makes completions in a parse's chart at the given index.
+	 * @param context The parse whose chart is to be filled.
 	 * @param index The index to make completions at.
 	 */
-	void complete(Chart chart, Integer index) {
-		if(chart.containsEdges(index)) { // any edges at this index?
+	void complete(Context context, int index) {
+		Chart chart = context.chart;
+		Set<Edge> edges = chart.edgeSet(index);
+		if(edges != null) { // any edges at this index?
 			// avoid concurrently modifying chart by getting array
-			Set<Edge> edges = chart.getEdges(index);
-			LinkedList<Edge> completeStack = new LinkedList<Edge>();
-			for(Edge edge : edges.toArray(new Edge[edges.size()])) {
-				completeStack.push(edge);
+			ParseWorkspace workspace = context.workspace;
+			int size = edges.size();
+			Edge[] array = workspace.edges(edges);
+			for(int j = 0; j < size; j++) {
+				workspace.push(array[j]); // agenda of edges to complete
 				
-				while(!completeStack.isEmpty()) {
-					Edge e = completeStack.pop();
-					Integer eo = new Integer(e.origin);
+				Edge e;
+				while((e = workspace.pop()) != null) {
+					List<Edge> waiting;
+					Chart.LeoItem path;
 					
-					// can only make completions based on passive edges
-					if(e.isPassive() && chart.containsEdges(eo)) {
-						// get all edges at this edge's origin
-						for(Edge originEdge : chart.getEdges(eo)) {
-							// compare each non-passive edge's active category with
-							// the left side of the edge used to complete
-							if(e.canComplete(originEdge)) {
-								// add new edge with dot advanced by one if same
-								Edge newEdge = Edge.complete(originEdge, e);
-								if(chart.addEdge(index, newEdge)) {
-									// only notify and recursively complete
-									// if the chart did not already contain this edge
-									fireEdgeCompleted(index, newEdge);									
-									completeStack.push(newEdge);
-								}
+					if(context.leo && e.isPassive() && (path = chart.getLeoItem(
+							e.origin, e.dottedRule.left)) != null) {
+						// deterministic reduction: skip to the top of the path
+						Edge newEdge = Edge.reduce(path, e);
+						if(addEdge(context, index, newEdge)) {
+							fireEdgeCompleted(context, index, newEdge);
+							workspace.push(newEdge);
+							advanceOverNullables(context, index, newEdge, true);
+						}
+					}
+					// can only make completions based on passive edges, and only
+					// for the edges at its origin whose active category is the
+					// left side of the edge used to complete
+					else if(e.isPassive() && (waiting = chart.getWaitingEdges(
+							e.origin, e.dottedRule.left)) != null) {
+						// index through the list in case it grows while completing
+						for(int i = 0; i < waiting.size(); i++) {
+							// add new edge with dot advanced by one
+							Edge newEdge = context.packForest
+								? Edge.pack(waiting.get(i), e)
+								: Edge.complete(waiting.get(i), e);
+							if(addEdge(context, index, newEdge)) {
+								// only notify and recursively complete
+								// if the chart did not already contain this edge
+								fireEdgeCompleted(context, index, newEdge);
+								workspace.push(newEdge);
+								advanceOverNullables(context, index, newEdge,
+										true);
 							}
 						}
 					}
 				}
 			}
+			
+			workspace.release(array, size);
+		}
+	}
+	
+	/**
+	 * Advances the dot of an edge just added to the chart over its active
+	 * category for as long as that category is nullable, as proposed by Aycock
+	 * and Horspool, so that empty constituents never have to be predicted and
+	 * completed. Each advanced edge is completed by the
+	 * {@link #nullEdge(Context, int, Category) null edge} for the category
+	 * passed over.
+	 * @param complete Whether to push the advanced edges onto the
+	 * workspace's agenda of edges still to be completed.
+	 * @since 0.5
+	 */
+	private void advanceOverNullables(Context context, int index, Edge edge,
+			boolean complete) {
+		Edge e = edge;
+		Category active;
+		while((active = e.dottedRule.activeCategory) != null
+				&& context.compiled.isNullable(active)) {
+			Edge basis = nullEdge(context, index, active);
+			e = context.packForest ? Edge.pack(e, basis)
+				: Edge.complete(e, basis);
+			if(!addEdge(context, index, e)) {
+				break; // the rest were advanced when the equal edge was added
+			}
+			
+			fireEdgeCompleted(context, index, e);
+			if(complete) {
+				context.workspace.push(e);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the passive edge by which the specified nullable category derives
+	 * the empty string at the given index. Its first derivation follows the
+	 * category's first {@link CompiledGrammar#getNullingRules(Category)
+	 * nulling rule}, and every other nulling rule is packed into it as an
+	 * alternative derivation, so that every tree with an empty constituent
+	 * is found. Null edges serve only as the bases of edges advanced over
+	 * nullable categories and are not added to the chart; each column keeps
+	 * the ones it has made.
+	 * <p>
+	 * The alternative derivations are only added once the null edges they
+	 * depend on have been made, since they may lead back to the null edge
+	 * they are derived for (as for rules <code>A -> B</code> and
+	 * <code>B -> A</code> with both categories nullable). Such cycles are
+	 * skipped when trees are built or counted.
+	 */
+	private Edge nullEdge(Context context, int index, Category category) {
+		Chart.Column column = context.chart.edgeSet(index);
+		if(column.nullEdges == null) {
+			column.nullEdges = new HashMap<Category, Edge>();
+		}
+		
+		Edge n = column.nullEdges.get(category);
+		if(n == null) {
+			LinkedList<Edge> made = new LinkedList<Edge>();
+			n = nullEdge(context, index, category, made);
+			
+			Edge m;
+			while((m = made.poll()) != null) {
+				Rule[] rules
+					= context.compiled.getNullingRules(m.dottedRule.left);
+				for(int i = 1; i < rules.length; i++) {
+					m.addDerivation(
+							nullDerivation(context, index, rules[i], made));
+				}
+			}
+		}
+			
+		return n;
+	}
+	
+	/**
+	 * Helper for nullEdge that gets a null edge, making only its first
+	 * derivation if it is new and leaving it to be given its alternatives.
+	 */
+	private Edge nullEdge(Context context, int index, Category category,
+			List<Edge> made) {
+		Map<Category, Edge> nullEdges = context.chart.edgeSet(index).nullEdges;
+		Edge n = nullEdges.get(category);
+		if(n == null) {
+			n = nullDerivation(context, index,
+					context.compiled.getNullingRules(category)[0], made);
+			nullEdges.put(category, n);
+			made.add(n);
 		}
+		
+		return n;
+	}
+	
+	/**
+	 * Helper for nullEdge that derives the empty string by a nulling rule,
+	 * advancing over the null edge for each category on its right side.
+	 * For a first nulling rule, this never leads back to the category the
+	 * rule is for.
+	 */
+	private Edge nullDerivation(Context context, int index, Rule rule,
+			List<Edge> made) {
+		Edge n = Edge.predictFor(rule, index);
+		for(Category c : rule.right) {
+			Edge basis = nullEdge(context, index, c, made);
+			n = context.packForest ? Edge.pack(n, basis)
+				: Edge.complete(n, basis);
+		}
+		
+		return n;
+	}
+	
+	/**
+	 * Adds a scanned or completed edge to a parse's chart. If the parse is
+	 * packing its chart and an equal edge is already present, the new edge is
+	 * packed into it as an alternative derivation.
+	 * @return <code>true</code> iff the chart did not already contain an edge
+	 * equal to the specified edge.
+	 */
+	private boolean addEdge(Context context, int index, Edge edge) {
+		Chart chart = context.chart;
+		if(chart.addEdge(index, edge)) {
+			return true;
+		}
+		
+		if(context.packForest) {
+			chart.edgeSet(index).get(edge).addDerivation(edge);
+		}
+		
+		return false;
 	}
 	
 	/**
@@ -500,60 +830,65 @@ public class EarleyParser {
 	}
 
 	private void fireOptionSet(ParserOption option, Boolean value) {
-		if(listener != null) {
-			listener.optionSet(
-					new ParserOptionEvent(this, option, value));
+		ParserListener l = listener;
+		if(l != null) {
+			l.optionSet(new ParserOptionEvent(this, option, value));
 		}
 	}
 	
-	private void fireParserSeeded(Integer index, Edge edge) {
-		if(listener != null) {
-			listener.parserSeeded(new EdgeEvent(this, index, edge));
+	private void fireParserSeeded(Context context, int index, Edge edge) {
+		if(context.listener != null) {
+			context.listener.parserSeeded(new EdgeEvent(this, index, edge));
 		}
 	}
 	
-	private void fireEdgePredicted(Integer index, Edge edge) {
-		if(listener != null) {
-			listener.edgePredicted(new EdgeEvent(this, index, edge));
+	private void fireEdgePredicted(Context context, int index, Edge edge) {
+		if(context.listener != null) {
+			context.listener.edgePredicted(new EdgeEvent(this, index, edge));
 		}
 	}
 	
-	private void fireEdgeScanned(Integer index, Edge edge) {
-		if(listener != null) {
-			listener.edgeScanned(new EdgeEvent(this, index, edge));
+	private void fireEdgeScanned(Context context, int index, Edge edge) {
+		if(context.listener != null) {
+			context.listener.edgeScanned(new EdgeEvent(this, index, edge));
 		}
 	}
 	
-	private void fireEdgeCompleted(Integer index, Edge edge) {
-		if(listener != null) {
-			listener.edgeCompleted(new EdgeEvent(this, index, edge));
+	private void fireEdgeCompleted(Context context, int index, Edge edge) {
+		if(context.listener != null) {
+			context.listener.edgeCompleted(new EdgeEvent(this, index, edge));
 		}
 	}
 	
-	private void fireParseComplete(Parse parse) {
-		if(listener != null) {
-			listener.parseComplete(new ParseEvent(this, parse));
+	private void fireParseComplete(Context context, Parse parse) {
+		if(context.listener != null) {
+			context.listener.parseComplete(new ParseEvent(this, parse));
 		}
 	}
 	
-	private void fireParseMessage(Parse parse, String message) {
-		if(listener != null) {
-			listener.parseMessage(new ParseEvent(this, parse), message);
+	private void fireParseMessage(Context context, Parse parse,
+			String message) {
+		if(context.listener != null) {
+			context.listener.parseMessage(new ParseEvent(this, parse), message);
 		}
 	}
 	
-	private void fireParseError(Parse parse, Integer index, String message)
-			throws PepException {
-		fireParseError(parse, index, new PepException(message));
+	private void fireParseError(Context context, Parse parse, int index,
+			String message) throws PepException {
+		fireParseError(context, parse, index, new PepException(message));
 	}
 	
-	private void fireParseError(Parse parse, Integer index, PepException cause)
-			throws PepException {
+	private void fireParseError(Context context, Parse parse, int index,
+			PepException cause) throws PepException {
 		parse.error = true;
-		if(listener == null) {
+		if(parse.cause == null) { // keep the first
+			parse.cause = cause;
+		}
+		if(context.listener == null) {
 			throw cause; // re-throw if no listener
 		}
 		
-		listener.parseError(new ParseErrorEvent(this, index, parse, cause));
+		context.listener.parseError(
+				new ParseErrorEvent(this, index, parse, cause));
 	}
 }
@@ -10,8 +10,11 @@
  */
 package edu.osu.ling.pep;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 
@@ -40,7 +43,17 @@ import java.util.Set;
  * {@link DottedRule dotted rule} by <code>1</code>,
  * but maintains the same origin position as the edge. It also maintains 
  * {@link #getBases() backpointers} to the edges that were used in completing
- * the new edge.
+ * the new edge. These are kept as a chain of links: each scanned or completed
+ * edge only points back to the edge it was advanced from and to the basis it
+ * was advanced over, so that the chain is shared with the edges it was
+ * derived from and advancing the dot never copies it.
+ * <p>
+ * When the parser {@link ParserOption#PACK_FOREST packs its chart} into a
+ * shared forest, edges are instead {@link #pack(Edge, Edge) created} without
+ * a set of bases, so that edges with the same dotted rule and origin are
+ * equal. Such an edge only links back to the edge it was advanced from and
+ * its basis, and any alternative derivations found for it are
+ * {@link #addDerivation(Edge) packed} into it.
  * <p>
  * Edges are immutable and can not be altered once they are created. In an
  * Earley parser, edges are only ever added, never removed or changed.
@@ -53,6 +66,11 @@ public class Edge {
 	DottedRule dottedRule;
 	int origin;
 	Set<Edge> bases;
+	Edge predecessor, basis;
+	boolean packed;
+	int basesHash;
+	List<Edge> derivations;
+	Chart.LeoItem reduction;
 	
 	/**
 	 * Creates an edge containing the specified dotted rule at the origin
@@ -106,7 +124,7 @@ public class Edge {
 			throw new NullPointerException("null rule");
 		}
 		
-		return new Edge(new DottedRule(rule), origin);
+		return new Edge(DottedRule.initial(rule), origin);
 	}
 
 	/**
@@ -170,10 +188,7 @@ public class Edge {
 				+ " (case " + (ignoreCase ? "in" : "") + "sensitive)");
 		}
 	
-		Edge scanEdge = new Edge(DottedRule.advanceDot(edge.dottedRule), edge.origin);
-		scanEdge.bases = Edge.addBasisEdge(edge, edge);
-		
-		return scanEdge;
+		return Edge.link(edge, edge);
 	}
 
 	/**
@@ -224,26 +239,146 @@ public class Edge {
 			throw new IllegalArgumentException("basis edge " + basis + " cannot complete " + toComplete);
 		}
 	
-		Set<Edge> newBases = Edge.addBasisEdge(toComplete, basis);
+		return Edge.link(toComplete, basis);
+	}
 					
-		return new Edge(DottedRule.advanceDot(toComplete.dottedRule),
-				toComplete.origin, newBases);
+	/**
+	 * Helper for scan and complete that advances the dot of the specified
+	 * edge over the given basis, linking the new edge back to both of them.
+	 * The hash code of the bases is carried along the chain of links, so that
+	 * it is not recomputed for every new edge.
+	 */
+	private static Edge link(Edge edge, Edge basis) {
+		Edge linked = new Edge(DottedRule.advanceDot(edge.dottedRule),
+				edge.origin);
+		linked.predecessor = edge;
+		linked.basis = basis;
+		linked.basesHash = edge.basesHashCode() + basis.hashCode();
+		
+		return linked;
 	}
 	
 	/**
-	 * Helper for scan and complete.
+	 * Creates an edge for a packed forest by advancing the dot of the
+	 * specified edge over the given basis. The new edge has no set of
+	 * {@link #getBases() bases}, so it is equal to any other edge with the
+	 * same dotted rule and origin; instead, it links back to
+	 * <code>edge</code> and <code>basis</code>. No checks are made that the
+	 * basis can actually be used to advance the edge.
+	 * @param edge The edge to advance.
+	 * @param basis The basis the edge is advanced over. For a scanned token,
+	 * this is <code>edge</code> itself.
+	 * @see ParserOption#PACK_FOREST
+	 * @since 0.5
 	 */
-	static Set<Edge> addBasisEdge(Edge edge, Edge basis) {
-		Set<Edge> newBases;
-		if(edge.bases.isEmpty()) { 
-			newBases = Collections.singleton(basis); // less expensive
+	static Edge pack(Edge edge, Edge basis) {
+		Edge packed = new Edge(DottedRule.advanceDot(edge.dottedRule),
+				edge.origin);
+		packed.predecessor = edge;
+		packed.basis = basis;
+		packed.packed = true;
+		
+		return packed;
+	}
+	
+	/**
+	 * Creates an edge for a packed forest by completing the topmost edge on
+	 * a deterministic reduction path. The edges between the given basis and
+	 * the top of the path are not created until they are
+	 * {@link #getBasis() needed}.
+	 * @param path The Leo item for <code>basis</code>'s left side at its
+	 * origin.
+	 * @param basis The passive edge at the bottom of the path.
+	 * @see ParserOption#LEO_RIGHT_RECURSION
+	 * @since 0.5
+	 */
+	static Edge reduce(Chart.LeoItem path, Edge basis) {
+		Edge reduced = Edge.pack(path.top, basis);
+		if(path.next != null) {
+			reduced.reduction = path;
 		}
-		else {
-			newBases = new LinkedHashSet<Edge>(edge.bases);
-			newBases.add(basis);
+		
+		return reduced;
+	}
+	
+	/**
+	 * Gets the basis this edge was advanced over. For an edge created by
+	 * {@link #reduce(Chart.LeoItem, Edge) reduction}, this first builds the
+	 * edges along the reduction path below it.
+	 * @since 0.5
+	 */
+	Edge getBasis() {
+		if(reduction != null) {
+			Edge b = basis;
+			for(Chart.LeoItem l = reduction; l.next != null; l = l.next) {
+				b = Edge.pack(l.waiting, b);
+			}
+			
+			basis = b;
+			reduction = null;
+		}
+		
+		return basis;
+	}
+	
+	/**
+	 * Packs an alternative derivation into this edge. The alternative is an
+	 * edge {@link #equals(Object) equal} to this one that was
+	 * {@link #pack(Edge, Edge) created} from a different predecessor or
+	 * basis.
+	 * @since 0.5
+	 */
+	void addDerivation(Edge alternative) {
+		if(derivations == null) {
+			derivations = new ArrayList<Edge>(2);
+			derivations.add(this);
 		}
 		
-		return newBases;
+		derivations.add(alternative);
+	}
+	
+	/**
+	 * Gets the derivations of this edge: the edge itself, followed by any
+	 * alternatives that have been {@link #addDerivation(Edge) packed} into it.
+	 * @since 0.5
+	 */
+	List<Edge> getDerivations() {
+		return (derivations == null)
+			? Collections.singletonList(this) : derivations;
+	}
+	
+	/**
+	 * Gets the edges this edge was completed with, in order, following the
+	 * chain of links back from this edge. Unlike {@link #getBases()}, the
+	 * array has an element for every category before the dot, even when the
+	 * same edge completed more than one of them. For an edge in a packed
+	 * forest, the bases of its first derivation are returned.
+	 * @since 0.5
+	 */
+	Edge[] getBasisArray() {
+		int count = 0;
+		Edge e = this;
+		for(; e.predecessor != null; e = e.predecessor) {
+			count++;
+		}
+		
+		// any bases the chain starts with, then the links from last to first
+		Edge[] array = e.bases.toArray(new Edge[e.bases.size() + count]);
+		int i = array.length;
+		for(e = this; e.predecessor != null; e = e.predecessor) {
+			array[--i] = e.getBasis();
+		}
+		
+		return array;
+	}
+	
+	/**
+	 * Computes the hash code of this edge's bases, taken from the chain of
+	 * links for a scanned or completed edge.
+	 */
+	private int basesHashCode() {
+		return packed ? 0
+			: (predecessor == null) ? bases.hashCode() : basesHash;
 	}
 	
 	/**
@@ -265,6 +400,10 @@ public class Edge {
 	/**
 	 * Gets the bases for completion of this edge, in order of insertion. A
 	 * completed edge inherits its bases from the edge from which it is created.
+	 * For an edge in a packed forest, the bases of its first derivation are
+	 * returned. The set is made from the chain of links back from this edge
+	 * each time this method is called, so an edge that completed more than
+	 * one category before the dot only occurs once.
 	 * @see #complete(Edge, Edge)
 	 * @return If this edge was completed based on other edges, those edges
 	 * are returned in their order of insertion. Otherwise,
@@ -272,7 +411,8 @@ public class Edge {
 	 * @since 0.2
 	 */
 	public Set<Edge> getBases() {
-		return bases;
+		return (predecessor == null) ? bases
+			: new LinkedHashSet<Edge>(Arrays.asList(getBasisArray()));
 	}
 
 	/**
@@ -289,6 +429,10 @@ public class Edge {
 	/**
 	 * Tests whether this edge is equal to another edge by comparing their
 	 * dotted rules, origin positions, and {@link #getBases() basis edges}.
+	 * The bases of two scanned or completed edges are compared link by link,
+	 * stopping at the first links the edges share. Edges in a
+	 * {@link ParserOption#PACK_FOREST packed forest} are equal to each other
+	 * regardless of their bases.
 	 * @return <code>true</code> iff the given object is an instance of
 	 * <code>Edge</code> and its dotted rule, origin, and bases are equal to
 	 * this edge's dotted rule, origin, and bases.
@@ -296,15 +440,43 @@ public class Edge {
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if(this == obj) {
+			return true;
+		}
 		if(obj instanceof Edge) {
 			Edge oe = (Edge)obj;
-			return (origin == oe.origin
-					&& dottedRule.equals(oe.dottedRule)
-					&& bases.equals(oe.bases));
+			if(origin != oe.origin || packed != oe.packed
+					|| !dottedRule.equals(oe.dottedRule)) {
+				return false;
+			}
+			
+			return packed || Edge.sameBases(this, oe);
 		}
 		
 		return false;
 	}
+	
+	/**
+	 * Helper for equals that compares the bases of two edges with the same
+	 * dotted rule and origin.
+	 */
+	private static boolean sameBases(Edge a, Edge b) {
+		while(a != b) {
+			if(a.predecessor == null || b.predecessor == null) {
+				// created with a set of bases
+				return (a.basesHashCode() == b.basesHashCode()
+						&& a.getBases().equals(b.getBases()));
+			}
+			if(a.basis != b.basis && !a.basis.equals(b.basis)) {
+				return false;
+			}
+			
+			a = a.predecessor;
+			b = b.predecessor;
+		}
+		
+		return true;
+	}
 
 	/**
 	 * Computes a hash code for this edge based on its dotted rule,
@@ -314,7 +486,7 @@ public class Edge {
 	@Override
 	public int hashCode() {
 		return ((37 + origin) * dottedRule.hashCode()
-				* (1 + bases.hashCode()));
+				* (1 + basesHashCode()));
 	}
 
 	/**
@@ -10,9 +10,11 @@
  */
 package edu.osu.ling.pep;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -24,12 +26,28 @@ import java.util.Set;
  * {@link Rule#getLeft() left side category}. The rule sets contained for
  * any given {@link Category left category} are not guaranteed to be 
  * maintained in the order of insertion.
+ * <p>
+ * A grammar also keeps a table of the {@link Category categories} that occur
+ * in its rules, with exactly one category for each name and terminal status.
+ * When a rule is {@link #addRule(Rule) added}, its categories are replaced
+ * by the grammar's own, and the categories in the table are numbered densely
+ * starting with {@link Category#START} at <code>0</code>. Rules are indexed
+ * by the number of their left side category.
+ * <p>
+ * Before parsing, a grammar is {@link #compile() compiled} into a form that
+ * does not change and in which the properties of its rules are worked out in
+ * advance. Grammars are not synchronized, so rules should not be added to a
+ * grammar while it is being used for parsing.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 1781 $
  */
 public class Grammar {
 	String name;
-	Map<Category, Set<Rule>> rules;
+	List<Category> categories;
+	Map<String, Category> nonterminals, terminals;
+	List<Set<Rule>> rules;
+	
+	private CompiledGrammar compiled;
 	
 	/**
 	 * Creates a grammar with the given name, initializes its internal data
@@ -38,7 +56,11 @@ public class Grammar {
 	 */
 	public Grammar(String name) {
 		this.name = name;
-		rules = new HashMap<Category, Set<Rule>>();
+		categories = new ArrayList<Category>();
+		categories.add(Category.START);
+		nonterminals = new HashMap<String, Category>();
+		terminals = new HashMap<String, Category>();
+		rules = new ArrayList<Set<Rule>>();
 	}
 	
 	/**
@@ -49,30 +71,106 @@ public class Grammar {
 		return name;
 	}
 	
+	/**
+	 * Gets this grammar's category with the specified name and terminal
+	 * status, adding a new category to the grammar's table if it does not
+	 * already contain one. Grammar loaders can use this method to avoid
+	 * creating a new category for every occurrence of a category in a rule.
+	 * @param name The category's name.
+	 * @param terminal Whether the category is a terminal.
+	 * @return The only category in this grammar with the given name and
+	 * terminal status.
+	 * @throws IllegalArgumentException If <code>terminal</code> is
+	 * <code>false</code> and <code>name</code> is <code>null</code> or
+	 * zero-length.
+	 * @see Category#Category(String, boolean)
+	 * @since 0.5
+	 */
+	public Category getCategory(String name, boolean terminal) {
+		Map<String, Category> table = terminal ? terminals : nonterminals;
+		Category c = table.get(name);
+		
+		if(c == null) {
+			c = new Category(name, terminal);
+			c.grammar = this;
+			c.id = categories.size();
+			categories.add(c);
+			table.put(name, c);
+		}
+		
+		return c;
+	}
+	
+	/**
+	 * Gets this grammar's category equal to the specified category, without
+	 * adding it to the table.
+	 * @return The grammar's own category, or <code>null</code> if the
+	 * grammar has none equal to <code>category</code>.
+	 * @since 0.5
+	 */
+	Category lookup(Category category) {
+		if(category.grammar == this || category == Category.START) {
+			return category;
+		}
+		
+		return (category.terminal ? terminals : nonterminals)
+			.get(category.name);
+	}
+	
 	/**
 	 * Adds a production rule. If no rules are contained for the 
 	 * {@link Rule#getLeft() left side} of the specified rule, a new rule
-	 * set is created.
+	 * set is created. Unless all of the rule's categories are already this
+	 * grammar's own, the grammar keeps an equal rule made up of its own
+	 * categories rather than the specified rule.
 	 * @param rule The rule to add.
 	 * @return <code>true</code> iff this grammar did not already contain
 	 * the specified rule.
 	 * @throws NullPointerException If <code>rule</code> is <code>null</code>.
+	 * @see #getCategory(String, boolean)
 	 */
 	public boolean addRule(Rule rule) {
 		if(rule == null) {
 			throw new NullPointerException("null rule");
 		}
 		
-		Set<Rule> r;
-		if(!rules.containsKey(rule.left)) { // already rules for rule.left?
-			r = new HashSet<Rule>();
-			rules.put(rule.left, r); // create, add rule set at rule.left
+		Category left = intern(rule.left);
+		Category[] right = new Category[rule.right.length];
+		boolean own = (left == rule.left);
+		for(int i = 0; i < right.length; i++) {
+			right[i] = intern(rule.right[i]);
+			own &= (right[i] == rule.right[i]);
 		}
-		else {
-			r = rules.get(rule.left); // get the existing rule set
+		
+		if(!own) {
+			rule = new Rule(left, right);
 		}
 		
-		return r.add(rule);
+		while(rules.size() <= left.id) {
+			rules.add(null);
+		}
+		
+		Set<Rule> r = rules.get(left.id); // already rules for left?
+		if(r == null) {
+			r = new LinkedHashSet<Rule>(); // keeps rules in a stable order
+			rules.set(left.id, r); // create, add rule set at left
+		}
+		
+		if(r.add(rule)) {
+			compiled = null; // out of date
+			DottedRule.initial(rule); // build dotted rules before parsing
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Helper for addRule.
+	 */
+	private Category intern(Category category) {
+		return (category == Category.START || category.grammar == this)
+			? category : getCategory(category.name, category.terminal);
 	}
 	
 	/**
@@ -83,7 +181,7 @@ public class Grammar {
 	 * specified category as their {@link Rule#getLeft() left side}.
 	 */
 	public boolean containsRules(Category left) {
-		return rules.containsKey(left);
+		return (getRules(left) != null);
 	}
 	
 	/**
@@ -98,7 +196,8 @@ public class Grammar {
 	 * the rules in the order in which they were {@link #addRule(Rule) added}.
 	 */
 	public Set<Rule> getRules(Category left) {
-		return rules.get(left);
+		Category c = lookup(left);
+		return (c == null || c.id >= rules.size()) ? null : rules.get(c.id);
 	}
 	
 	/**
@@ -107,13 +206,31 @@ public class Grammar {
 	public Set<Rule> getAllRules() {
 		Set<Rule> allRules = new HashSet<Rule>();
 		
-		for(Set<Rule> s : rules.values()) {
-			allRules.addAll(s);
+		for(Set<Rule> s : rules) {
+			if(s != null) {
+				allRules.addAll(s);
+			}
 		}
 		
 		return allRules;
 	}
 	
+	/**
+	 * Compiles this grammar for parsing. The compiled grammar is kept until a
+	 * rule is {@link #addRule(Rule) added} to this grammar, so this method
+	 * only does any work the first time it is called after a change.
+	 * @return A compiled grammar containing the rules currently in this
+	 * grammar.
+	 * @since 0.5
+	 */
+	public synchronized CompiledGrammar compile() {
+		if(compiled == null) {
+			compiled = new CompiledGrammar(this);
+		}
+		
+		return compiled;
+	}
+	
 	/**
 	 * Gets a singleton preterminal rule with the specified left category,
 	 * producing the given string token.
@@ -128,17 +245,7 @@ public class Grammar {
 	 */
 	Rule getSingletonPreterminal(Category left, String token,
 			boolean ignoreCase) {
-		if(rules.containsKey(left)) {
-			for(Rule r : rules.get(left)) {
-				if(r.isSingletonPreterminal() && (r.right[0].name.equals(token)
-					|| (ignoreCase
-							&& r.right[0].name.equalsIgnoreCase(token)))) {
-					return r;
-				}
-			}
-		}
-
-	    return null;
+		return compile().getSingletonPreterminal(left, token, ignoreCase);
 	}
 	
 	/**
@@ -154,19 +261,18 @@ public class Grammar {
 		sb.append(name);
 		sb.append(": {");
 		
-		Iterator<Set<Rule>> si = rules.values().iterator();
-		while(si.hasNext()) {
-			Iterator<Rule> ri = si.next().iterator();
-			while(ri.hasNext()) {
-				sb.append(ri.next().toString());
-				if(ri.hasNext()) {
-					sb.append(", ");
+		boolean first = true;
+		for(Set<Rule> s : rules) {
+			if(s != null) {
+				for(Rule r : s) {
+					if(!first) {
+						sb.append(", ");
+					}
+					
+					sb.append(r.toString());
+					first = false;
 				}
 			}
-			
-			if(si.hasNext()) {
-				sb.append(", ");
-			}
 		}
 		
 		sb.append("}]");
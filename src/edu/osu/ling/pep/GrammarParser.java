@@ -0,0 +1,303 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+
+/**
+ * Loads {@link Grammar grammars} from XML files in the format described by
+ * <code>grammar.xsd</code>.
+ * <p>
+ * A grammar parser reads its file as a stream, adding each rule to the
+ * grammar as soon as the rule's element ends, so the memory it uses apart
+ * from the grammar itself is proportional to the size of one rule rather
+ * than to the size of the file. If it is {@link #isValidating() validating}
+ * (the default), the file is checked against <code>grammar.xsd</code> in the
+ * same pass, as its events are read; the schema is found on the class path
+ * as <code>META-INF/etc/grammar.xsd</code>, and if it is missing the file is
+ * loaded without being validated.
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ * @since 0.5
+ */
+public class GrammarParser {
+	File grammarFile;
+	InputStream input;
+	boolean validating = true;
+	
+	/**
+	 * Creates a grammar parser for the specified file.
+	 */
+	public GrammarParser(File grammarFile) {
+		this.grammarFile = grammarFile;
+	}
+	
+	/**
+	 * Creates a grammar parser that reads a grammar from the specified
+	 * stream. The stream is not closed when the grammar has been read.
+	 */
+	public GrammarParser(InputStream input) {
+		this.input = input;
+	}
+	
+	/**
+	 * Tests whether this grammar parser validates grammars against
+	 * <code>grammar.xsd</code> while reading them.
+	 */
+	public boolean isValidating() {
+		return validating;
+	}
+	
+	/**
+	 * Sets whether this grammar parser validates grammars against
+	 * <code>grammar.xsd</code> while reading them.
+	 */
+	public void setValidating(boolean validating) {
+		this.validating = validating;
+	}
+	
+	/**
+	 * Reads the grammar this grammar parser was created for.
+	 * @throws PepException If the grammar could not be read, is not well
+	 * formed or valid, or contains an illegal rule.
+	 */
+	public Grammar parse() throws PepException {
+		InputStream in = input;
+		try {
+			if(in == null) {
+				in = new FileInputStream(grammarFile);
+			}
+			
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(
+				XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+			Loader loader = new Loader((grammarFile == null)
+				? factory.createXMLStreamReader(in)
+				: factory.createXMLStreamReader(grammarFile.toURI().toString(),
+						in));
+			
+			try {
+				Validator validator = validating ? newValidator() : null;
+				if(validator == null) {
+					while(loader.hasNext()) {
+						loader.next();
+					}
+				}
+				else {
+					validator.validate(new StAXSource(loader));
+				}
+			}
+			catch(XMLStreamException xse) {
+				if(loader.failure == null) {
+					throw xse;
+				}
+			}
+			catch(SAXException se) {
+				if(loader.failure == null) {
+					Throwable t = se; // validators wrap the error they report
+					while(t != null && !(t instanceof SAXParseException)) {
+						t = t.getCause();
+					}
+					
+					throw new PepException("invalid grammar",
+							(t == null) ? se : t);
+				}
+			}
+			finally {
+				loader.close();
+			}
+			
+			if(loader.failure != null) {
+				throw new PepException("problem loading grammar",
+						loader.failure);
+			}
+			if(loader.grammar == null) {
+				throw new PepException("no grammar element");
+			}
+			
+			if(Pep.verbosity >= Pep.V_GRAMMAR) { // slow for large grammars
+				Pep.printMessage(loader.grammar.toString(), Pep.V_GRAMMAR);
+				Pep.printMessage("", Pep.V_GRAMMAR);
+			}
+			
+			return loader.grammar;
+		}
+		catch(XMLStreamException xse) {
+			throw new PepException("problem parsing", xse);
+		}
+		catch(IOException io) {
+			throw new PepException("problem reading grammar", io);
+		}
+		finally {
+			if(in != input) {
+				try {
+					in.close();
+				}
+				catch(IOException ignore) {
+					// already read
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Creates a validator for <code>grammar.xsd</code> that stops at the
+	 * first error and prints warnings.
+	 * @return <code>null</code> if the schema could not be found.
+	 */
+	private Validator newValidator() throws SAXException {
+		InputStream xsd = getClass().getClassLoader().getResourceAsStream(
+				"META-INF/etc/grammar.xsd");
+		if(xsd == null) {
+			Pep.printMessage("Unable to locate grammar.xsd", Pep.V_ALL);
+			return null;
+		}
+		
+		Validator validator;
+		try {
+			validator = SchemaFactory.newInstance(
+					XMLConstants.W3C_XML_SCHEMA_NS_URI)
+				.newSchema(new StreamSource(xsd)).newValidator();
+		}
+		finally {
+			try {
+				xsd.close();
+			}
+			catch(IOException ignore) {
+				// schema already read
+			}
+		}
+		
+		validator.setErrorHandler(new ErrorHandler() {
+			public void warning(SAXParseException e) {
+				Pep.printWarning("line " + e.getLineNumber() + ": "
+					+ e.getMessage());
+			}
+			
+			public void error(SAXParseException e) throws SAXException {
+				throw e;
+			}
+			
+			public void fatalError(SAXParseException e) throws SAXException {
+				throw e;
+			}
+		});
+		
+		return validator;
+	}
+	
+	/**
+	 * Builds a grammar from the events of a stream reader as they are read,
+	 * whether by a validator or by the grammar parser itself. A rule is
+	 * started by a <code>rule</code> element, each child element is a
+	 * category on its right side, and the rule is added to the grammar when
+	 * the element ends.
+	 */
+	class Loader extends StreamReaderDelegate {
+		Grammar grammar;
+		Category left;
+		List<Category> right = new ArrayList<Category>();
+		int depth, ruleDepth;
+		IllegalArgumentException failure;
+		
+		Loader(XMLStreamReader reader) {
+			super(reader);
+		}
+		
+		@Override
+		public int next() throws XMLStreamException {
+			int event = super.next();
+			try {
+				if(event == XMLStreamConstants.START_ELEMENT) {
+					start();
+				}
+				else if(event == XMLStreamConstants.END_ELEMENT) {
+					end();
+				}
+			}
+			catch(IllegalArgumentException iae) {
+				failure = iae;
+				throw new XMLStreamException(iae.getMessage(), getLocation(),
+						iae);
+			}
+			
+			return event;
+		}
+		
+		/**
+		 * Helper for next.
+		 */
+		private void start() {
+			depth++;
+			if(grammar == null) { // root element
+				grammar = new Grammar(attribute("name"));
+				Pep.printMessage("Loading grammar " + grammar.name
+						+ ((grammarFile == null)
+							? "" : " from " + grammarFile.getPath()),
+						Pep.V_GRAMMAR);
+			}
+			else if(left != null) {
+				if(depth == ruleDepth + 1) {
+					right.add(grammar.getCategory(attribute("name"),
+							attribute("terminal").equals("true")));
+				}
+			}
+			else if(getLocalName().equals("rule")) {
+				left = grammar.getCategory(attribute("category"), false);
+				ruleDepth = depth;
+			}
+		}
+		
+		/**
+		 * Helper for start that gets an attribute of the current element, or
+		 * the empty string if it has none by that name.
+		 */
+		private String attribute(String name) {
+			String value = getAttributeValue(null, name);
+			return (value == null) ? "" : value;
+		}
+		
+		/**
+		 * Helper for next.
+		 */
+		private void end() {
+			if(left != null && depth == ruleDepth) {
+				grammar.addRule(new Rule(left,
+						right.toArray(new Category[right.size()])));
+				left = null;
+				right.clear();
+			}
+			
+			depth--;
+		}
+	}
+}
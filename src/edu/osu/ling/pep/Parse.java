@@ -13,9 +13,11 @@ package edu.osu.ling.pep;
 import static edu.osu.ling.pep.Category.START;
 import static edu.osu.ling.pep.Status.*;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -34,16 +36,22 @@ import java.util.Set;
  * to be obtained using {@link #getParseTrees()}. For a parse of a string
  * using a grammar that permits structural or lexical ambiguity, the methods
  * for fetching parse trees will return sets that contain more than one element.
+ * <p>
+ * Parses are also {@link Iterable iterable} over the parse trees for the seed
+ * category. Unlike {@link #getParseTrees()}, {@link #iterator()} creates the
+ * trees one at a time as they are asked for, so that the first few trees of
+ * a highly ambiguous string can be had without building all of them.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 2520 $
  * @see EarleyParser
  * @see Chart
  */
-public class Parse {
+public class Parse implements Iterable<ParseTree> {
 	List<String> tokens;
 	Category seed;
 	Chart chart;
 	boolean error;
+	PepException cause;
 	
 	private Set<ParseTree> parseTrees;
 	
@@ -92,22 +100,13 @@ public class Parse {
 		return chart;
 	}
 	
-	Set<Edge> getCompletedEdges(Category category, int origin, int index) {
-		Set<Edge> edges = chart.edgeSets.get(index);
-		if(edges == null || edges.isEmpty()) { // any edges at this index?
-			return Collections.emptySet();
-		}
-		
-		Set<Edge> es = new HashSet<Edge>();
-		
-		for(Edge e : edges) {
-			if(e.origin == origin && e.isPassive() && 
-					e.dottedRule.left.equals(category)) {
-				es.add(e);
-			}
-		}
-		
-		return es;
+	/**
+	 * Gets the passive edges for the specified category and span, as indexed
+	 * by this parse's chart.
+	 * @see Chart#getCompletedEdges(Category, int, int)
+	 */
+	List<Edge> getCompletedEdges(Category category, int origin, int index) {
+		return chart.getCompletedEdges(category, origin, index);
 	}
 	
 	/**
@@ -134,6 +133,18 @@ public class Parse {
 			? REJECT : ACCEPT;
 	}
 	
+	/**
+	 * Gets the exception that caused an error while parsing, if any.
+	 * @return The first exception passed to the {@link ParserListener
+	 * listener} or thrown, or <code>null</code> if this parse's
+	 * {@link #getStatus() status} is not {@link Status#ERROR} or the cause
+	 * is not known.
+	 * @since 0.5
+	 */
+	public PepException getError() {
+		return cause;
+	}
+	
 	/**
 	 * Gets completed parse trees for the seed category spanning the entire
 	 * input string. This method returns valid derivations (if any) that the
@@ -161,6 +172,122 @@ public class Parse {
 		return parseTrees;
 	}
 	
+	/**
+	 * Gets an iterator over the completed parse trees for the seed category
+	 * spanning the entire input string. The trees are found in the chart just
+	 * as for {@link #getParseTrees()}, but each is only created when the
+	 * iterator is advanced to it, and the iterator holds on to no more than
+	 * the cursors needed to find the next one.
+	 * @return An iterator that does not support {@link Iterator#remove()
+	 * removal}, and that has no trees if this parse's {@link #getStatus()
+	 * status} is {@link Status#ERROR}.
+	 * @see #iterateParseTreesFor(Category, int, int)
+	 * @since 0.5
+	 */
+	public Iterator<ParseTree> iterator() {
+		return error ? Collections.<ParseTree>emptySet().iterator()
+			: iterateParseTreesFor(START, 0, tokens.size());
+	}
+	
+	/**
+	 * Gets an iterator over the parse trees derived during this parse with
+	 * the specified category as their {@link ParseTree#getNode() parent}'s
+	 * left side, spanning the given origin and index. The trees are created
+	 * one at a time as the iterator is advanced; no record is kept of the
+	 * trees already returned.
+	 * @throws NullPointerException If <code>category</code> is
+	 * <code>null</code>.
+	 * @see #getParseTreesFor(Category, int, int)
+	 * @since 0.5
+	 */
+	public Iterator<ParseTree> iterateParseTreesFor(Category category,
+			int origin, int index) {
+		if(category == null) {
+			throw new NullPointerException("null category");
+		}
+		
+		return new ParseTreeIterator(
+				getCompletedEdges(category, origin, index));
+	}
+	
+	/**
+	 * Counts the completed parse trees for the seed category spanning the
+	 * entire input string, without creating them.
+	 * @return The number of trees for this parse, or zero if its
+	 * {@link #getStatus() status} is {@link Status#ERROR}. Unless the grammar
+	 * has cycles, this is the number of trees {@link #iterator() iterated
+	 * over}.
+	 * @see #countParseTreesFor(Category, int, int)
+	 * @since 0.5
+	 */
+	public BigInteger countParseTrees() {
+		return error ? BigInteger.ZERO
+			: countParseTreesFor(START, 0, tokens.size());
+	}
+	
+	/**
+	 * Counts the parse trees derived during this parse with the specified
+	 * category as their {@link ParseTree#getNode() parent}'s left side,
+	 * spanning the given origin and index, without creating them. The count
+	 * is found by dynamic programming over the edges in the chart: the number
+	 * of trees for a passive edge is the sum, over its
+	 * {@link ParserOption#PACK_FOREST derivations}, of the number of trees
+	 * for the edge it was advanced from times the number for the edge it was
+	 * completed with, and each edge is counted only once. This takes time
+	 * polynomial in the size of the chart even when the number of trees is
+	 * exponential in the length of the string.
+	 * <p>
+	 * As when creating the trees, derivations that lead back to an edge
+	 * whose trees are being counted are not counted.
+	 * @throws NullPointerException If <code>category</code> is
+	 * <code>null</code>.
+	 * @see #getParseTreesFor(Category, int, int)
+	 * @since 0.5
+	 */
+	public BigInteger countParseTreesFor(Category category, int origin,
+			int index) {
+		if(category == null) {
+			throw new NullPointerException("null category");
+		}
+		
+		Counts counts = new Counts();
+		BigInteger count = BigInteger.ZERO;
+		for(Edge e : getCompletedEdges(category, origin, index)) {
+			// one tree per sequence of children, even for a START edge
+			count = count.add(counts.valueOf(e));
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Counts the sequences of child trees for edges, multiplying out the
+	 * counts for their bases.
+	 */
+	private static class Counts extends DerivationWalker<BigInteger> {
+		@Override
+		BigInteger none() {
+			return BigInteger.ZERO;
+		}
+		
+		@Override
+		BigInteger unit() {
+			return BigInteger.ONE;
+		}
+		
+		@Override
+		BigInteger extend(BigInteger prefix, Edge basis,
+				BigInteger basisValue) {
+			return (basisValue == null) ? prefix // from a scan
+				: prefix.multiply(basisValue);
+		}
+		
+		@Override
+		BigInteger add(BigInteger value, BigInteger alternative) {
+			return value.add(alternative);
+		}
+	}
+	
 	/**
 	 * Gets a parse tree corresponding to the given edge.
 	 * @param edge The edge to find a parse tree for.
@@ -212,9 +339,12 @@ public class Parse {
 	 * for. This is the end position of the subtree.
 	 * @return A set of parse trees for the given category at the given
 	 * origin and string index position, or the {@link Collections#emptySet()
-	 * empty set} if no edges match.
+	 * empty set} if no edges match. If the chart is a
+	 * {@link ParserOption#PACK_FOREST packed forest}, the trees for every
+	 * alternative derivation of the matching edges are included.
 	 * @throws NullPointerException If <code>category</code> is
 	 * <code>null</code>.
+	 * @see ParseTree#newParseTrees(Edge)
 	 * @since 0.2
 	 */
 	public Set<ParseTree> getParseTreesFor(Category category, int origin,
@@ -226,7 +356,7 @@ public class Parse {
 		Set<ParseTree> trees = new HashSet<ParseTree>();
 		
 		for(Edge e : getCompletedEdges(category, origin, index)) {
-			trees.add(ParseTree.newParseTree(e));
+			trees.addAll(ParseTree.newParseTrees(e));
 		}
 		
 		return trees;
@@ -267,7 +397,8 @@ public class Parse {
 	 * @return &quot;<code>ACCEPT: S -> [the, boy, left] (1)</code>&quot; for an 
 	 * {@link #getStatus() accepted} parse of &quot;the boy left&quot; with
 	 * seed category <code>S</code> and one possible {@link #getParseTrees parse
-	 * tree}.
+	 * tree}. The trees are {@link #countParseTrees() counted} rather than
+	 * created.
 	 */
 	@Override
 	public String toString() {
@@ -281,7 +412,7 @@ public class Parse {
 		
 		if(status.equals(ACCEPT)) {
 			sb.append(" (");
-			sb.append(getParseTrees().size());
+			sb.append(countParseTrees());
 			sb.append(')');
 		}
 		
@@ -0,0 +1,473 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Serves parses over HTTP, using the HTTP server built into the JDK.
+ * <p>
+ * A parse server keeps an {@link EarleyParser Earley parser} for each of its
+ * grammars, {@link #addParser(EarleyParser) added} under the grammar's
+ * {@link Grammar#getName() name}, so that the grammars stay loaded and
+ * compiled between requests. Requests are handled on the
+ * {@link Executor executor} the server was created with, so any number of
+ * them can be parsing at once with the same parsers. Each thread handling
+ * requests keeps a {@link ParseWorkspace workspace} of its own.
+ * <p>
+ * The server answers the following requests, always with a JSON object:
+ * <dl>
+ * 	<dt><code>GET /grammars</code></dt>
+ * 	<dd>The names of the grammars served, as
+ * 		<code>{"grammars":["miniscule"]}</code>.</dd>
+ * 	<dt><code>GET /parse?grammar=<em>name</em>&amp;seed=<em>category</em>&amp;tokens=<em>string</em></code></dt>
+ * 	<dd>Parses a single string whose tokens are separated by white
+ * 		space.</dd>
+ * 	<dt><code>POST /parse?grammar=<em>name</em>&amp;seed=<em>category</em></code></dt>
+ * 	<dd>Parses each line of the request body, in UTF-8, as a separate
+ * 		string whose tokens are separated by white space.</dd>
+ * </dl>
+ * The <code>seed</code> parameter can be left out if the server has a
+ * {@link #setDefaultSeed(Category) default seed category}, and
+ * <code>grammar</code> can be left out if it serves only one grammar. A
+ * <code>trees</code> parameter limits the number of parse trees given for
+ * each string (by default, {@value #DEFAULT_TREES}). The answer to a parse
+ * request looks like
+ * <blockquote><code>{"grammar":"miniscule","seed":"S","results":[{"tokens":["the","boy","left"],"status":"ACCEPT","count":1,"trees":["[S[NP[Det[the]][N[boy]]][VP[left]]]"]}]}</code></blockquote>
+ * with one result for each string, in order, along with an
+ * <code>"error"</code> message for those whose status is
+ * {@link Status#ERROR}. Bad requests get an answer of the form
+ * <code>{"error":"..."}</code> with a status code of 400, 404, or 405,
+ * and a request that fails unexpectedly gets one with a status code of 500.
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ * @since 0.5
+ * @see Pep
+ */
+public class ParseServer {
+	/**
+	 * The number of parse trees given for each string, unless the request
+	 * asks for some other number.
+	 */
+	public static final int DEFAULT_TREES = 100;
+	static final Pattern WHITE_SPACE = Pattern.compile("\\s+");
+	
+	HttpServer server;
+	Map<String, EarleyParser> parsers
+		= new ConcurrentHashMap<String, EarleyParser>();
+	volatile Category defaultSeed;
+	
+	private ThreadLocal<ParseWorkspace> workspaces
+		= new ThreadLocal<ParseWorkspace>() {
+			@Override
+			protected ParseWorkspace initialValue() {
+				return new ParseWorkspace();
+			}
+		};
+	
+	/**
+	 * Creates a new parse server that will listen at the specified address
+	 * once it is {@link #start() started}.
+	 * @param address The address to listen at. A port of <code>0</code>
+	 * picks any free port; see {@link #getAddress()}.
+	 * @param executor The executor to handle requests on, which the server
+	 * does not shut down.
+	 * @throws IOException If the server's socket can not be bound.
+	 */
+	public ParseServer(InetSocketAddress address, Executor executor)
+			throws IOException {
+		if(executor == null) {
+			throw new IllegalArgumentException("null executor");
+		}
+		
+		server = HttpServer.create(address, 0);
+		server.setExecutor(executor);
+		server.createContext("/grammars", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				ParseServer.this.handleGrammars(exchange);
+			}
+		});
+		server.createContext("/parse", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				ParseServer.this.handleParse(exchange);
+			}
+		});
+	}
+	
+	/**
+	 * Gets the address this server is listening at.
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+	
+	/**
+	 * Adds a parser to serve parses for its grammar, under the grammar's
+	 * name. A parser added for a grammar with the same name as another
+	 * replaces the other's parser.
+	 * @return The parser that was being served for a grammar of that name,
+	 * or <code>null</code> if there was none.
+	 */
+	public EarleyParser addParser(EarleyParser parser) {
+		return parsers.put(parser.getGrammar().getName(), parser);
+	}
+	
+	/**
+	 * Gets the seed category used for requests that do not specify one.
+	 * @return <code>null</code> if requests must specify one.
+	 */
+	public Category getDefaultSeed() {
+		return defaultSeed;
+	}
+	
+	/**
+	 * Sets the seed category used for requests that do not specify one.
+	 */
+	public void setDefaultSeed(Category defaultSeed) {
+		this.defaultSeed = defaultSeed;
+	}
+	
+	/**
+	 * Starts answering requests, on a thread started for the purpose.
+	 */
+	public void start() {
+		server.start();
+	}
+	
+	/**
+	 * Stops answering requests, waiting up to the specified number of
+	 * seconds for the requests underway to finish.
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+	}
+	
+	/**
+	 * Answers a request for the names of the grammars served.
+	 */
+	void handleGrammars(HttpExchange exchange) throws IOException {
+		try {
+			if(!exchange.getRequestMethod().equals("GET")) {
+				ParseServer.send(exchange, 405, ParseServer.error(
+						"method not allowed: " + exchange.getRequestMethod()));
+				return;
+			}
+			
+			StringBuilder sb = new StringBuilder("{\"grammars\":");
+			ParseServer.appendArray(sb, parsers.keySet());
+			sb.append('}');
+			ParseServer.send(exchange, 200, sb.toString());
+		}
+		finally {
+			exchange.close();
+		}
+	}
+	
+	/**
+	 * Answers a request to parse one or more strings. A request that could
+	 * not be answered because of some unexpected failure gets a 500 error
+	 * rather than an empty reply.
+	 */
+	void handleParse(HttpExchange exchange) throws IOException {
+		try {
+			String method = exchange.getRequestMethod();
+			if(!method.equals("GET") && !method.equals("POST")) {
+				ParseServer.send(exchange, 405,
+						ParseServer.error("method not allowed: " + method));
+				return;
+			}
+			
+			Map<String, String> params;
+			try {
+				params = ParseServer.parameters(
+						exchange.getRequestURI().getRawQuery());
+			}
+			catch(IllegalArgumentException iae) { // from a bad % escape
+				ParseServer.send(exchange, 400, ParseServer.error(
+						"malformed query: " + iae.getMessage()));
+				return;
+			}
+			
+			String name = params.get("grammar");
+			EarleyParser parser = (name != null) ? parsers.get(name)
+				: (parsers.size() == 1) ? parsers.values().iterator().next()
+				: null;
+			if(parser == null) {
+				ParseServer.send(exchange, 404, ParseServer.error(
+						(name == null) ? "no grammar specified"
+							: "no grammar named " + name));
+				return;
+			}
+			
+			String s = params.get("seed");
+			if(s != null && s.trim().isEmpty()) {
+				ParseServer.send(exchange, 400,
+						ParseServer.error("empty seed category"));
+				return;
+			}
+			
+			Category seed = (s == null) ? defaultSeed : new Category(s);
+			if(seed == null) {
+				ParseServer.send(exchange, 400,
+						ParseServer.error("no seed category specified"));
+				return;
+			}
+			
+			int trees = ParseServer.DEFAULT_TREES;
+			if(params.containsKey("trees")) {
+				try {
+					trees = Integer.parseInt(params.get("trees"));
+				}
+				catch(NumberFormatException nfe) {
+					trees = -1;
+				}
+				
+				if(trees < 0) {
+					ParseServer.send(exchange, 400, ParseServer.error(
+							"invalid number of trees: " + params.get("trees")));
+					return;
+				}
+			}
+			
+			List<List<String>> strings = new ArrayList<List<String>>();
+			if(method.equals("GET")) {
+				String tokens = params.get("tokens");
+				if(tokens == null) {
+					ParseServer.send(exchange, 400,
+							ParseServer.error("no tokens specified"));
+					return;
+				}
+				
+				strings.add(ParseServer.tokenize(tokens));
+			}
+			else {
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						exchange.getRequestBody(), "UTF-8"));
+				String line;
+				while((line = in.readLine()) != null) {
+					strings.add(ParseServer.tokenize(line));
+				}
+			}
+			
+			StringBuilder sb = new StringBuilder("{\"grammar\":");
+			ParseServer.appendString(sb, parser.getGrammar().getName());
+			sb.append(",\"seed\":");
+			ParseServer.appendString(sb, seed.getName());
+			sb.append(",\"results\":[");
+			
+			ParseWorkspace workspace = workspaces.get();
+			for(int i = 0; i < strings.size(); i++) {
+				if(i > 0) {
+					sb.append(',');
+				}
+				
+				Parse parse;
+				try {
+					parse = parser.parse(strings.get(i), seed, workspace);
+				}
+				catch(PepException pe) {
+					parse = BatchParser.failed(strings.get(i), seed, pe);
+				}
+				
+				ParseServer.appendResult(sb, parse, trees);
+			}
+			
+			sb.append("]}");
+			ParseServer.send(exchange, 200, sb.toString());
+		}
+		catch(RuntimeException re) { // nothing has been sent yet
+			ParseServer.send(exchange, 500,
+					ParseServer.error("internal error: " + re));
+		}
+		finally {
+			exchange.close();
+		}
+	}
+	
+	/**
+	 * Appends the JSON object for a single parse.
+	 */
+	static void appendResult(StringBuilder sb, Parse parse, int trees) {
+		Status status = parse.getStatus();
+		sb.append("{\"tokens\":");
+		ParseServer.appendArray(sb, parse.getTokens());
+		sb.append(",\"status\":");
+		ParseServer.appendString(sb, status.name());
+		sb.append(",\"count\":");
+		sb.append((status == Status.ACCEPT) ? parse.countParseTrees() : "0");
+		sb.append(",\"trees\":[");
+		
+		if(status == Status.ACCEPT) {
+			int n = 0;
+			for(ParseTree t : parse) { // only make the trees to be given
+				if(n == trees) {
+					break;
+				}
+				if(n++ > 0) {
+					sb.append(',');
+				}
+				
+				ParseServer.appendString(sb, t.toString());
+			}
+		}
+		
+		sb.append(']');
+		if(parse.getError() != null) {
+			sb.append(",\"error\":");
+			ParseServer.appendString(sb, parse.getError().getMessage());
+		}
+		
+		sb.append('}');
+	}
+	
+	/**
+	 * Splits a string into tokens at white space.
+	 */
+	static List<String> tokenize(String string) {
+		String s = string.trim();
+		return s.isEmpty() ? new ArrayList<String>()
+			: Arrays.asList(WHITE_SPACE.split(s));
+	}
+	
+	/**
+	 * Decodes the parameters of a URI's query string.
+	 * @throws IllegalArgumentException If the query contains a malformed
+	 * escape sequence.
+	 */
+	static Map<String, String> parameters(String query) {
+		Map<String, String> params = new HashMap<String, String>();
+		if(query != null) {
+			for(String pair : query.split("&")) {
+				int eq = pair.indexOf('=');
+				params.put(ParseServer.decode((eq < 0) ? pair
+							: pair.substring(0, eq)),
+						(eq < 0) ? "" : ParseServer.decode(
+							pair.substring(eq + 1)));
+			}
+		}
+		
+		return params;
+	}
+	
+	/**
+	 * Helper for parameters.
+	 */
+	private static String decode(String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		}
+		catch(UnsupportedEncodingException uee) { // UTF-8 always supported
+			throw new IllegalStateException(uee);
+		}
+	}
+	
+	/**
+	 * Makes the JSON object for an error.
+	 */
+	static String error(String message) {
+		StringBuilder sb = new StringBuilder("{\"error\":");
+		ParseServer.appendString(sb, message);
+		return sb.append('}').toString();
+	}
+	
+	/**
+	 * Appends a JSON array of strings.
+	 */
+	static void appendArray(StringBuilder sb, Iterable<String> strings) {
+		sb.append('[');
+		boolean first = true;
+		for(String s : strings) {
+			if(!first) {
+				sb.append(',');
+			}
+			
+			ParseServer.appendString(sb, s);
+			first = false;
+		}
+		
+		sb.append(']');
+	}
+	
+	/**
+	 * Appends a string as a JSON string, quoting it and escaping the
+	 * characters that need it.
+	 */
+	static void appendString(StringBuilder sb, String s) {
+		if(s == null) {
+			sb.append("null");
+			return;
+		}
+		
+		sb.append('"');
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch(c) {
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					if(c < 0x20) {
+						sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+					}
+					else {
+						sb.append(c);
+					}
+			}
+		}
+		
+		sb.append('"');
+	}
+	
+	/**
+	 * Sends a JSON answer.
+	 */
+	static void send(HttpExchange exchange, int code, String json)
+			throws IOException {
+		byte[] bytes = json.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type",
+				"application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(code, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+}
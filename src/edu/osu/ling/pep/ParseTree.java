@@ -12,8 +12,13 @@ package edu.osu.ling.pep;
 
 import static edu.osu.ling.pep.Category.START;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A parse tree that represents the derivation of a string based on the
@@ -38,6 +43,7 @@ public class ParseTree {
 	Category node;
 	ParseTree parent;
 	ParseTree[] children = null;
+	private int hash;
 	
 	/**
 	 * Creates a new parse tree with the specified category and parent parse
@@ -84,14 +90,17 @@ public class ParseTree {
 	 * @param parent The parent tree of the new parse tree.
 	 * @return A new parse tree whose {@link #getNode() node} is the
 	 * specified edge's dotted rule's left side and whose children are based
-	 * on the {@link Edge#getBases() bases} of the specified edge.
+	 * on the {@link Edge#getBases() bases} of the specified edge. If the
+	 * edge is part of a {@link ParserOption#PACK_FOREST packed forest}, the
+	 * tree is based on the first derivation of each edge.
+	 * @see #newParseTrees(Edge)
 	 */
 	public static ParseTree newParseTree(Edge edge, ParseTree parent) {
 		Edge e;
 		ParseTree parentTree;
 		
 		if(edge.dottedRule.left.equals(START)) { // first child if START
-			e = edge.bases.iterator().next();
+			e = edge.getBasisArray()[0];
 			parentTree = null;
 		}
 		else {
@@ -100,28 +109,191 @@ public class ParseTree {
 				? null : parent;
 		}
 		
-		DottedRule dr = e.dottedRule;
-		ParseTree newTree = null;
+		// fill in the children with a stack of edges still to be made into
+		// trees, rather than recursing once per level
+		ParseTree root = ParseTree.node(e, parentTree);
+		LinkedList<Edge> edges = new LinkedList<Edge>();
+		LinkedList<ParseTree> trees = new LinkedList<ParseTree>();
+		if(e.isPassive()) {
+			edges.push(e);
+			trees.push(root);
+		}
+		
+		while(!edges.isEmpty()) {
+			ParseTree t = trees.pop();
+			Edge[] bases = edges.pop().getBasisArray();
+			if(bases.length > 0) {
+				t.children = new ParseTree[bases.length];
+				for(int i = 0; i < bases.length; i++) {
+					t.children[i] = ParseTree.node(bases[i], t);
+					if(bases[i].isPassive()) { // basis from a completion
+						edges.push(bases[i]);
+						trees.push(t.children[i]);
+					}
+				}
+			}
+		}
+		
+		return root;
+	}
+	
+	/**
+	 * Helper for newParseTree that makes the node for an edge, without its
+	 * children.
+	 */
+	private static ParseTree node(Edge e, ParseTree parent) {
+		return new ParseTree(e.isPassive() ? e.dottedRule.left
+				: e.dottedRule.activeCategory, parent, null); // scan if active
+	}
+	
+	/**
+	 * Creates every parse tree derived from the specified edge. For an edge in
+	 * a {@link ParserOption#PACK_FOREST packed forest}, this includes the
+	 * trees for all of the alternative derivations packed into the edge and
+	 * into the edges it was derived from; otherwise, the only tree is the one
+	 * {@link #newParseTree(Edge) based on} the edge's bases.
+	 * <p>
+	 * The subtrees for each edge are only made once, and are shared by every
+	 * sequence of children they occur in while the trees are being found.
+	 * Because each tree has its own {@link #getParent() parent} links, the
+	 * trees returned are then copied from the shared subtrees. Neither step
+	 * recurses, so the depth of a tree is not limited by the call stack.
+	 * <p>
+	 * If the forest is cyclic (for example, because the grammar contains
+	 * rules <code>A -> B</code> and <code>B -> A</code>), derivations that
+	 * would lead back to an edge whose trees are already being built are
+	 * skipped, so that only finitely many trees are created.
+	 * @param edge The edge that is to be at the root of the parse trees.
+	 * @return A list of parse trees whose parents are <code>null</code>.
+	 * @since 0.5
+	 */
+	public static List<ParseTree> newParseTrees(Edge edge) {
+		Subtrees subtrees = new Subtrees();
+		List<ParseTree> trees = new ArrayList<ParseTree>();
 		
-		if(e.isPassive()) { // basis from a completion?
-			int basisCount = e.bases.size();
-			newTree = new ParseTree(dr.left, parentTree, 
-					(basisCount == 0) ? null : new ParseTree[basisCount]);
+		if(edge.dottedRule.left.equals(START)) { // first child if START
+			for(ParseTree[] c : subtrees.valueOf(edge)) {
+				trees.add(ParseTree.copy(c[0], null));
+			}
+		}
+		else {
+			for(ParseTree t : subtrees.subtrees(edge, edge.isPassive()
+					? subtrees.valueOf(edge) : null)) {
+				trees.add(ParseTree.copy(t, null));
+			}
+		}
+		
+		return trees;
+	}
+	
+	/**
+	 * Finds the sequences of child trees for edges, with the subtrees made
+	 * for each basis edge shared between all the sequences it occurs in.
+	 * The subtrees have <code>null</code> parents.
+	 */
+	private static class Subtrees extends DerivationWalker<List<ParseTree[]>> {
+		private Map<Edge, List<ParseTree>> made
+			= new IdentityHashMap<Edge, List<ParseTree>>();
+		
+		@Override
+		List<ParseTree[]> none() {
+			return Collections.emptyList();
+		}
+		
+		@Override
+		List<ParseTree[]> unit() {
+			return Collections.singletonList(new ParseTree[0]);
+		}
+		
+		@Override
+		List<ParseTree[]> extend(List<ParseTree[]> prefix, Edge basis,
+				List<ParseTree[]> basisValue) {
+			List<ParseTree> trees = subtrees(basis, basisValue);
+			List<ParseTree[]> extended
+				= new ArrayList<ParseTree[]>(prefix.size() * trees.size());
+			for(ParseTree[] s : prefix) {
+				for(ParseTree t : trees) {
+					ParseTree[] e = Arrays.copyOf(s, s.length + 1);
+					e[s.length] = t;
+					extended.add(e);
+				}
+			}
 			
-			if(basisCount > 0) {
-				int i = 0;
-				Iterator<Edge> itr = e.bases.iterator();
-				while(itr.hasNext()) {
-					newTree.children[i++]
-					    = ParseTree.newParseTree(itr.next(), newTree);
+			return extended;
+		}
+		
+		@Override
+		List<ParseTree[]> add(List<ParseTree[]> value,
+				List<ParseTree[]> alternative) {
+			if(value.isEmpty()) {
+				return alternative;
+			}
+			
+			List<ParseTree[]> sum = new ArrayList<ParseTree[]>(
+					value.size() + alternative.size());
+			sum.addAll(value);
+			sum.addAll(alternative);
+			return sum;
+		}
+		
+		/**
+		 * Gets the subtrees for a basis edge, making them the first time.
+		 * @param sequences The sequences of children for <code>basis</code>,
+		 * or <code>null</code> if it was scanned.
+		 */
+		List<ParseTree> subtrees(Edge basis, List<ParseTree[]> sequences) {
+			List<ParseTree> trees = made.get(basis);
+			if(trees == null) {
+				if(sequences == null) { // from a scan
+					trees = Collections.singletonList(new ParseTree(
+							basis.dottedRule.activeCategory, null));
+				}
+				else { // basis from a completion
+					trees = new ArrayList<ParseTree>(sequences.size());
+					for(ParseTree[] c : sequences) {
+						trees.add(new ParseTree(basis.dottedRule.left, null,
+								(c.length == 0) ? null : c));
+					}
+				}
+				
+				if(!trees.isEmpty()) { // empty while still being computed
+					made.put(basis, trees);
 				}
 			}
+			
+			return trees;
 		}
-		else { // from a scan
-			newTree = new ParseTree(dr.activeCategory, parentTree, null);
+	}
+	
+	/**
+	 * Copies a tree, giving it a new parent. The copy shares no nodes with
+	 * the original.
+	 */
+	static ParseTree copy(ParseTree tree, ParseTree parent) {
+		ParseTree root = ParseTree.shallowCopy(tree, parent);
+		LinkedList<ParseTree> copies = new LinkedList<ParseTree>();
+		copies.push(root);
+		
+		while(!copies.isEmpty()) {
+			ParseTree c = copies.pop();
+			if(c.children != null) {
+				for(int i = 0; i < c.children.length; i++) {
+					c.children[i] = ParseTree.shallowCopy(c.children[i], c);
+					copies.push(c.children[i]);
+				}
+			}
 		}
 		
-		return newTree;
+		return root;
+	}
+	
+	/**
+	 * Helper for copy that copies a node, with a new array holding the
+	 * original's children for the moment.
+	 */
+	private static ParseTree shallowCopy(ParseTree tree, ParseTree parent) {
+		return new ParseTree(tree.node, parent, (tree.children == null)
+				? null : tree.children.clone());
 	}
 	
 	/**
@@ -158,38 +330,100 @@ public class ParseTree {
 	
 	/**
 	 * Tests whether this parse tree is equal to another by comparing its
-	 * node, parent, and child parse trees.
+	 * node, parent, and child parse trees. The trees' hash codes are compared
+	 * first, so that trees that differ are usually told apart without
+	 * walking them.
 	 */
 	@Override
 	public boolean equals(Object obj) {
-		if(obj instanceof ParseTree) {
-			ParseTree op = (ParseTree)obj;
+		if(this == obj) {
+			return true;
+		}
+		if(!(obj instanceof ParseTree) || hashCode() != obj.hashCode()) {
+			return false;
+		}
+		
+		// compare pairs of subtrees with a stack instead of recursing
+		LinkedList<ParseTree> pairs = new LinkedList<ParseTree>();
+		pairs.push((ParseTree)obj);
+		pairs.push(this);
+		
+		while(!pairs.isEmpty()) {
+			ParseTree t = pairs.pop(), op = pairs.pop();
+			if(t == op) {
+				continue; // shared subtree
+			}
+			if(!t.node.equals(op.node)
+					|| !((t.parent == null && op.parent == null)
+						|| (t.parent != null && op.parent != null
+							&& t.parent.node.equals(op.parent.node)))
+					|| (t.children == null) != (op.children == null)) {
+				return false;
+			}
 			
-			return (node.equals(op.node)
-					&& ((parent == null && op.parent == null)
-						|| parent.node.equals(op.parent.node))
-					&& ((children == null && op.children == null)
-						|| Arrays.equals(children, op.children)));
+			if(t.children != null) {
+				if(t.children.length != op.children.length) {
+					return false;
+				}
+				
+				for(int i = 0; i < t.children.length; i++) {
+					pairs.push(op.children[i]);
+					pairs.push(t.children[i]);
+				}
+			}
 		}
 		
-		return false;
+		return true;
 	}
 
 	/**
 	 * Computes a hash code for this parse tree based on its underlying edge
-	 * and child parse trees.
+	 * and child parse trees. The hash code of each subtree is computed only
+	 * once and then kept, so parse trees should not be changed once they have
+	 * been put in a hash-based collection.
 	 */
 	@Override
 	public int hashCode() {
-		int hash = (31 * node.hashCode());
+		if(hash == 0) {
+			// subtrees before the trees containing them, without recursing
+			LinkedList<ParseTree> stack = new LinkedList<ParseTree>();
+			stack.push(this);
+			
+			while(!stack.isEmpty()) {
+				ParseTree t = stack.peek();
+				boolean ready = true;
+				if(t.children != null) {
+					for(ParseTree c : t.children) {
+						if(c.hash == 0) {
+							stack.push(c);
+							ready = false;
+						}
+					}
+				}
+				
+				if(ready) {
+					stack.pop();
+					t.hash = t.computeHash();
+				}
+			}
+		}
+		
+		return hash;
+	}
+	
+	/**
+	 * Helper for hashCode, called once the children's hash codes are known.
+	 */
+	private int computeHash() {
+		int h = (31 * node.hashCode());
 		if(parent != null) {
-			hash *= (17 * parent.node.hashCode());
+			h *= (17 * parent.node.hashCode());
 		}
 		if(children != null) {
-			hash *= Arrays.hashCode(children);
+			h *= Arrays.hashCode(children);
 		}
 		
-		return hash;
+		return (h == 0) ? 1 : h; // zero means not computed yet
 	}
 
 	/**
@@ -201,18 +435,30 @@ public class ParseTree {
 	 */
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder("[");
-		sb.append(node.toString());
+		StringBuilder sb = new StringBuilder();
 		
-		// recursively append children
-		if(children != null) {
-			for(ParseTree child : children) {
-				sb.append(child.toString());
+		// closing brackets are pushed before the children they follow
+		LinkedList<Object> stack = new LinkedList<Object>();
+		stack.push(this);
+		while(!stack.isEmpty()) {
+			Object o = stack.pop();
+			if(o instanceof ParseTree) {
+				ParseTree t = (ParseTree)o;
+				sb.append('[');
+				sb.append(t.node.toString());
+				stack.push(Character.valueOf(']'));
+				
+				if(t.children != null) {
+					for(int i = t.children.length - 1; i >= 0; i--) {
+						stack.push(t.children[i]);
+					}
+				}
+			}
+			else {
+				sb.append(o);
 			}
 		}
 		
-		sb.append(']');
-		
 		return sb.toString();
 	}
 
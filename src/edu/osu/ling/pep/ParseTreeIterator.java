@@ -0,0 +1,363 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import static edu.osu.ling.pep.Category.START;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Iterates over the parse trees derived from a series of passive edges,
+ * creating each tree only when it is asked for.
+ * <p>
+ * Rather than building every tree up front, a parse tree iterator builds
+ * one tree at a time by working through an agenda of tasks: making the tree
+ * for a basis edge, choosing a {@link Edge#getDerivations() derivation} of
+ * an edge, and putting the trees made for a derivation's children together.
+ * Whenever an edge has more than one derivation, the choice is pushed on a
+ * single explicit stack along with the agenda and the trees made so far, so
+ * that getting the next tree only has to go back to the latest choice that
+ * has derivations left. Since the agenda and the trees made are linked lists
+ * that are never changed, they are shared between choices rather than copied.
+ * The memory used is proportional to the size of a tree rather than to the
+ * number of trees, the first tree is found in time proportional to its size,
+ * and no tree is too deep to be built.
+ * <p>
+ * Derivations that would lead back to an edge whose tree is being built
+ * (because of a cycle in the grammar) are skipped. No record is kept of the
+ * trees already returned, so a tree that can be derived in more than one way
+ * from the edges given is returned once for each way.
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ * @since 0.5
+ * @see Parse#iterator()
+ */
+class ParseTreeIterator implements Iterator<ParseTree> {
+	private Iterator<Edge> edges;
+	private Task agenda;
+	private Trees made;
+	private LinkedList<Choice> choices = new LinkedList<Choice>();
+	private ParseTree next;
+	
+	/**
+	 * Creates a new parse tree iterator for the trees derived from the
+	 * specified passive edges, in order.
+	 */
+	ParseTreeIterator(Iterable<Edge> edges) {
+		this.edges = edges.iterator();
+	}
+	
+	/**
+	 * Tests whether there are more parse trees.
+	 */
+	public boolean hasNext() {
+		while(next == null) {
+			if(search()) {
+				// subtrees are shared between choices, so give out a copy
+				next = ParseTree.copy(made.tree, null);
+			}
+			else if(edges.hasNext()) {
+				Edge e = edges.next();
+				agenda = e.dottedRule.left.equals(START)
+					? new Derive(e, null, new First(null, null)) // first child
+					: new Make(e, null, null);
+			}
+			else {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Gets the next parse tree.
+	 * @throws NoSuchElementException If there are no more parse trees.
+	 */
+	public ParseTree next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		
+		ParseTree t = next;
+		next = null;
+		return t;
+	}
+	
+	/**
+	 * Not supported, since parse trees are derived from a parse's chart.
+	 * @throws UnsupportedOperationException Always.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Helper for hasNext that works through the agenda until it is empty,
+	 * going back to the latest choice whenever a task fails. If the agenda is
+	 * already empty, the tree last made is done with, so the search starts
+	 * by going back.
+	 * @return <code>false</code> if there are no choices left.
+	 */
+	private boolean search() {
+		boolean found = (agenda != null) || backtrack();
+		while(found && agenda != null) {
+			Task t = agenda;
+			agenda = t.next;
+			found = t.perform(this) || backtrack();
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * Helper for search that restores the state saved with the latest
+	 * choice and takes its next derivation, dropping the choice once it has
+	 * none left.
+	 * @return <code>false</code> if there are no choices left.
+	 */
+	private boolean backtrack() {
+		Choice c = choices.peek();
+		if(c == null) {
+			agenda = null;
+			made = null;
+			return false;
+		}
+		
+		Edge d = c.derivations.next();
+		if(!c.derivations.hasNext()) {
+			choices.pop();
+		}
+		
+		agenda = c.agenda;
+		made = c.made;
+		derive(d, c.ancestors);
+		return true;
+	}
+	
+	/**
+	 * Puts the tasks for the children of a derivation at the front of the
+	 * agenda: one for each of its bases if it was created with them, or else
+	 * one for the edge it was advanced from followed by one for the basis it
+	 * was advanced over.
+	 */
+	void derive(Edge derivation, Ancestors ancestors) {
+		if(derivation.predecessor == null) { // predicted, or created with bases
+			Edge[] bases = derivation.bases.toArray(
+					new Edge[derivation.bases.size()]);
+			for(int i = bases.length - 1; i >= 0; i--) {
+				agenda = new Make(bases[i], ancestors, agenda);
+			}
+		}
+		else {
+			agenda = new Derive(derivation.predecessor, ancestors,
+					new Make(derivation.getBasis(), ancestors, agenda));
+		}
+	}
+	
+	/**
+	 * Gets the trees made since the specified point, in the order they were
+	 * made.
+	 */
+	ParseTree[] madeSince(Trees mark) {
+		int n = 0;
+		for(Trees t = made; t != mark; t = t.next) {
+			n++;
+		}
+		
+		ParseTree[] trees = new ParseTree[n];
+		for(Trees t = made; t != mark; t = t.next) {
+			trees[--n] = t.tree;
+		}
+		
+		return trees;
+	}
+	
+	/**
+	 * The passive edges whose trees are being built, innermost first.
+	 */
+	static class Ancestors {
+		Edge edge;
+		Ancestors next;
+		
+		Ancestors(Edge edge, Ancestors next) {
+			this.edge = edge;
+			this.next = next;
+		}
+		
+		static boolean contain(Ancestors ancestors, Edge edge) {
+			for(Ancestors a = ancestors; a != null; a = a.next) {
+				if(a.edge == edge) { // equal edges may end elsewhere
+					return true;
+				}
+			}
+			
+			return false;
+		}
+	}
+	
+	/**
+	 * The trees made so far for the tree being built, the latest first.
+	 * Their parents are <code>null</code>.
+	 */
+	static class Trees {
+		ParseTree tree;
+		Trees next;
+		
+		Trees(ParseTree tree, Trees next) {
+			this.tree = tree;
+			this.next = next;
+		}
+	}
+	
+	/**
+	 * An edge with derivations left to try, and the agenda and trees made
+	 * as they were when it was first reached.
+	 */
+	static class Choice {
+		Iterator<Edge> derivations;
+		Ancestors ancestors;
+		Task agenda;
+		Trees made;
+		
+		Choice(Iterator<Edge> derivations, Ancestors ancestors, Task agenda,
+				Trees made) {
+			this.derivations = derivations;
+			this.ancestors = ancestors;
+			this.agenda = agenda;
+			this.made = made;
+		}
+	}
+	
+	/**
+	 * A task on the agenda, followed by the tasks after it.
+	 */
+	abstract static class Task {
+		Task next;
+		
+		Task(Task next) {
+			this.next = next;
+		}
+		
+		/**
+		 * Performs this task, after it has been taken off the agenda.
+		 * @return <code>false</code> if there is no tree this way.
+		 */
+		abstract boolean perform(ParseTreeIterator iterator);
+	}
+	
+	/**
+	 * Makes the tree for a basis edge: a single leaf for a scanned edge, or
+	 * for a passive edge, the tree whose children are made by choosing one
+	 * of its derivations.
+	 */
+	static class Make extends Task {
+		Edge basis;
+		Ancestors ancestors;
+		
+		Make(Edge basis, Ancestors ancestors, Task next) {
+			super(next);
+			this.basis = basis;
+			this.ancestors = ancestors;
+		}
+		
+		@Override
+		boolean perform(ParseTreeIterator iterator) {
+			if(!basis.isPassive()) { // from a scan
+				iterator.made = new Trees(
+						new ParseTree(basis.dottedRule.activeCategory, null),
+						iterator.made);
+				return true;
+			}
+			if(Ancestors.contain(ancestors, basis)) { // skip cycles
+				return false;
+			}
+			
+			iterator.agenda = new Derive(basis,
+					new Ancestors(basis, ancestors),
+					new Join(basis, iterator.made, iterator.agenda));
+			return true;
+		}
+	}
+	
+	/**
+	 * Chooses the first derivation of an edge, saving a choice if it has
+	 * more.
+	 */
+	static class Derive extends Task {
+		Edge edge;
+		Ancestors ancestors;
+		
+		Derive(Edge edge, Ancestors ancestors, Task next) {
+			super(next);
+			this.edge = edge;
+			this.ancestors = ancestors;
+		}
+		
+		@Override
+		boolean perform(ParseTreeIterator iterator) {
+			Iterator<Edge> derivations = edge.getDerivations().iterator();
+			Edge d = derivations.next();
+			if(derivations.hasNext()) {
+				iterator.choices.push(new Choice(derivations, ancestors,
+						iterator.agenda, iterator.made));
+			}
+			
+			iterator.derive(d, ancestors);
+			return true;
+		}
+	}
+	
+	/**
+	 * Puts the trees made for a passive edge's children together into the
+	 * edge's tree.
+	 */
+	static class Join extends Task {
+		Edge edge;
+		Trees mark;
+		
+		Join(Edge edge, Trees mark, Task next) {
+			super(next);
+			this.edge = edge;
+			this.mark = mark;
+		}
+		
+		@Override
+		boolean perform(ParseTreeIterator iterator) {
+			ParseTree[] children = iterator.madeSince(mark);
+			iterator.made = new Trees(new ParseTree(edge.dottedRule.left, null,
+					(children.length == 0) ? null : children), mark);
+			return true;
+		}
+	}
+	
+	/**
+	 * Keeps only the first of the trees made for a passive edge's children,
+	 * as for the edges for the special {@link Category#START start category}.
+	 */
+	static class First extends Task {
+		Trees mark;
+		
+		First(Trees mark, Task next) {
+			super(next);
+			this.mark = mark;
+		}
+		
+		@Override
+		boolean perform(ParseTreeIterator iterator) {
+			iterator.made = new Trees(iterator.madeSince(mark)[0], mark);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.util.Arrays;
+import java.util.Set;
+
+
+/**
+ * Working storage that an {@link EarleyParser Earley parser} can reuse from
+ * one parse to the next, rather than allocating it anew for every string.
+ * <p>
+ * A workspace holds the array the edges at an index are copied into before
+ * more are added there, the agenda of edges still to be completed, and the
+ * marks recording which categories have been predicted at an index. These
+ * are emptied after each use and only grow, so a thread that keeps a
+ * workspace and passes it to
+ * {@link EarleyParser#parse(Iterable, Category, ParseWorkspace)} or
+ * {@link EarleyParser#recognize(Iterable, Category, ParseWorkspace)} soon
+ * parses without allocating any of them. When recognizing, the chart is
+ * kept by the workspace as well and reset for the next string, since only
+ * the status of the parse is returned.
+ * <p>
+ * Workspaces are not synchronized, so each thread parsing at the same time
+ * needs a workspace of its own. The parser, however, can be shared.
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ * @since 0.5
+ * @see EarleyParser
+ */
+public class ParseWorkspace {
+	static final int DEFAULT_CAPACITY = 64;
+	
+	Chart chart;
+	private Edge[] edges = new Edge[DEFAULT_CAPACITY];
+	private Edge[] agenda = new Edge[DEFAULT_CAPACITY];
+	private int agendaSize;
+	private int[] predicted = new int[0];
+	private int mark;
+	
+	/**
+	 * Creates a new, empty workspace.
+	 */
+	public ParseWorkspace() {
+		// nothing to do until the workspace is used
+	}
+	
+	/**
+	 * Gets this workspace's chart, emptied and with room for the specified
+	 * number of indices. The chart belongs to this workspace, and is emptied
+	 * again the next time this method is called.
+	 */
+	Chart chart(int capacity) {
+		if(chart == null) {
+			chart = new Chart(capacity);
+		}
+		else {
+			chart.reset(capacity);
+		}
+		
+		return chart;
+	}
+	
+	/**
+	 * Copies the edges of the specified set into this workspace's array of
+	 * edges, so that more edges can be added to the set while they are gone
+	 * through. The array may only be used until this method is called
+	 * again, and should be {@link #release(Edge[], int) released} once it
+	 * is no longer needed.
+	 * @return An array whose first <code>edges.size()</code> elements are the
+	 * edges of the set.
+	 */
+	Edge[] edges(Set<Edge> set) {
+		int size = set.size();
+		if(size > edges.length) {
+			edges = new Edge[Math.max(size, edges.length * 2)];
+		}
+		
+		return set.toArray(edges);
+	}
+	
+	/**
+	 * Clears the first <code>size</code> elements of an array gotten from
+	 * {@link #edges(Set)}, so that this workspace does not keep edges from
+	 * being garbage collected once the parse they belong to is done with.
+	 */
+	void release(Edge[] array, int size) {
+		Arrays.fill(array, 0, size, null);
+	}
+	
+	/**
+	 * Pushes an edge onto the agenda of edges still to be completed.
+	 */
+	void push(Edge edge) {
+		if(agendaSize == agenda.length) {
+			agenda = Arrays.copyOf(agenda, agendaSize * 2);
+		}
+		
+		agenda[agendaSize++] = edge;
+	}
+	
+	/**
+	 * Pops the edge most recently pushed onto the agenda.
+	 * @return The edge, or <code>null</code> if the agenda is empty.
+	 */
+	Edge pop() {
+		if(agendaSize == 0) {
+			return null;
+		}
+		
+		Edge e = agenda[--agendaSize];
+		agenda[agendaSize] = null; // no longer needed here
+		return e;
+	}
+	
+	/**
+	 * Starts a new round of prediction, forgetting which categories have
+	 * been {@link #predict(int) predicted} so far.
+	 * @param size The number of categories in the grammar predicted for.
+	 */
+	void startPredicting(int size) {
+		if(predicted.length < size) {
+			predicted = new int[size];
+			mark = 0;
+		}
+		
+		if(++mark == 0) { // wrapped around, so old marks could match
+			Arrays.fill(predicted, 0);
+			mark = 1;
+		}
+	}
+	
+	/**
+	 * Marks the category with the specified number as predicted.
+	 * @return <code>true</code> iff it was not already predicted in this
+	 * round.
+	 */
+	boolean predict(int category) {
+		if(predicted[category] == mark) {
+			return false;
+		}
+		
+		predicted[category] = mark;
+		return true;
+	}
+}
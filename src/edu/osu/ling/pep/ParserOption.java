@@ -53,7 +53,61 @@ public enum ParserOption {
 	 * <p>
 	 * Default value: {@link Boolean#FALSE}.
 	 */
-	PREDICT_FOR_PRETERMINALS(Boolean.FALSE);
+	PREDICT_FOR_PRETERMINALS(Boolean.FALSE),
+	
+	/**
+	 * Whether the Earley parser should pack its chart into a shared forest.
+	 * Normally, the chart contains a separate {@link Edge edge} for every
+	 * derivation of the same dotted rule, origin, and index, so that the
+	 * chart for a highly ambiguous string grows exponentially with its length.
+	 * If this is set to <code>true</code>, the chart contains only one edge
+	 * for each dotted rule, origin, and index, and any alternative derivations
+	 * are packed into that edge rather than being added to the chart.
+	 * {@link Parse#getParseTrees() Parse trees} are read from the packed
+	 * forest, so the same trees are found either way.
+	 * <p>
+	 * Default value: {@link Boolean#FALSE}.
+	 * @since 0.5
+	 */
+	PACK_FOREST(Boolean.FALSE),
+	
+	/**
+	 * Whether the Earley parser should use Leo's (1991) deterministic
+	 * reduction paths when completing edges. With right-recursive rules such
+	 * as <code>VP -> V VP</code>, completing a category normally completes a
+	 * chain of edges whose length grows with the input, so that parsing
+	 * takes quadratic time even for an unambiguous grammar. If this is set to
+	 * <code>true</code>, the parser remembers the top of each such chain and
+	 * completes it directly, so that LR-regular grammars are parsed in linear
+	 * time.
+	 * <p>
+	 * The passive edges in the middle of a chain are not added to the chart,
+	 * so {@link Parse#getParseTreesFor(Category, int, int)} does not find
+	 * them, although they are part of the trees for the edges above them.
+	 * {@link Parse#getParseTrees() The parse trees} for the seed category are
+	 * the same as without this option. Since reduction paths are kept for
+	 * edges rather than derivations, setting this option also sets 
+	 * {@link #PACK_FOREST}.
+	 * <p>
+	 * Default value: {@link Boolean#FALSE}.
+	 * @since 0.5
+	 */
+	LEO_RIGHT_RECURSION(Boolean.FALSE),
+	
+	/**
+	 * Whether the Earley parser should look ahead one token when predicting.
+	 * If this is set to <code>true</code>, a rule is only predicted at a
+	 * given index if a string derived from it can begin with the token at
+	 * that index, as determined by the FIRST sets of the grammar's
+	 * {@link CompiledGrammar compiled form}. This keeps edges that can never
+	 * be completed out of the chart, which pays off for grammars that have
+	 * many rules for the same category. Nothing is predicted after the last
+	 * token.
+	 * <p>
+	 * Default value: {@link Boolean#FALSE}.
+	 * @since 0.5
+	 */
+	LOOKAHEAD_PREDICTION(Boolean.FALSE);
 	
 	final Boolean defaultValue;
 	
@@ -10,28 +10,33 @@
  */
 package edu.osu.ling.pep;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.Scanner;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
-
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
@@ -39,13 +44,6 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 /**
@@ -63,15 +61,34 @@ import org.xml.sax.SAXParseException;
  * 			<code>echo "the boy left" | pep -g samples/miniscule.xml -v 2 -s S -
  * 			</code>
  * 		</li>
+ * 		<li>
+ * 			<code>pep -g samples/miniscule.xml -s S -t 4 -b sentences.txt</code>
+ * 		</li>
+ * 		<li>
+ * 			<code>pep -g samples/miniscule.xml -g samples/tiny.xml -s S -p 8080
+ * 			</code>
+ * 		</li>
  *  </ol>
  * 	</blockquote>
- * The above commands cause Pep to create an Earley parser using the
+ * The first two commands cause Pep to create an Earley parser using the
  * grammar specified in the file <code>samples/miniscule.xml</code> for the
  * {@link Parse#getSeed() seed category} <code>S</code> and the input 
  * string &quot;<code>the boy left</code>&quot;. Example (2) shows how to 
  * configure Pep to read input from the standard input stream. For either of
  * these commands, Pep prints out the result of the parse as well as all
  * {@link ParseTree parse trees} for the specified string. 
+ * <p>
+ * Example (3) runs Pep in batch mode, loading the grammar once and then
+ * parsing each line of the file <code>sentences.txt</code> (or of the
+ * standard input, if no file or <code>-</code> is given) as a separate
+ * string on four worker threads. For each line, in the order they were read,
+ * Pep prints a line containing the parse's {@link Status status}, the
+ * {@link Parse#countParseTrees() number of parse trees}, the time taken to
+ * parse in milliseconds, and the string itself, separated by tabs.
+ * <p>
+ * Example (4) starts a {@link ParseServer parse server} on port 8080 of the
+ * local host for both of the grammars given, keeping them loaded and
+ * answering requests for parses as JSON until Pep is stopped.
  * </p>
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 3114 $
@@ -173,15 +190,12 @@ public class Pep implements ParserListener {
 		Parse parse = parseEvent.parse;
 		
 		Pep.print("", Pep.V_CHART); // only if other output above
-		Pep.print(parse, Pep.V_RECOGNITION);
+		Pep.print(parse, Pep.V_RECOGNITION); // trees counted, not created
 		
 		if(Pep.verbosity >= Pep.V_PARSE) {
-			Set<ParseTree> parseTrees = parse.getParseTrees();
-			if(!parseTrees.isEmpty()) {
-				int count = 1;
-				for(ParseTree pt : parseTrees) {
-					Pep.print(count++ + ". " + pt.toString(), Pep.V_PARSE);
-				}
+			int count = 1;
+			for(ParseTree pt : parse) { // trees are made as they are printed
+				Pep.print(count++ + ". " + pt.toString(), Pep.V_PARSE);
 			}
 		}
 		
@@ -320,12 +334,12 @@ public class Pep implements ParserListener {
 	 * Invokes Pep from the command line.
 	 * <p>
 	 * The main work this method does, apart from tokenizing the arguments and
-	 * input tokens, is to load and parse the XML grammar file (as specified
-	 * by <code>-g</code> or <code>--grammar</code>). If any of the arguments
-	 * <code>-g</code>, <code>--grammar</code>, <code>-s</code>,
-	 * <code>--seed</code>, <code>-o</code>, <code>--option</code>, occur
-	 * with no argument following, this method prints an error notifying the
-	 * user. 
+	 * input tokens, is to load and parse the XML, text, or binary grammar
+	 * file (as specified by <code>-g</code> or <code>--grammar</code>). If
+	 * any of the arguments <code>-g</code>, <code>--grammar</code>,
+	 * <code>-s</code>, <code>--seed</code>, <code>-o</code>,
+	 * <code>--option</code>, occur with no argument following, this method
+	 * prints an error notifying the user. 
 	 * @param args The expected arguments are as follows, and can occur in
 	 * any particular order:
 	 * <ul>
@@ -333,6 +347,11 @@ public class Pep implements ParserListener {
 	 * 	<li><code>-s|--seed &lt;seed category&gt;</code></li>
 	 * 	<li><code>-v|--verbose {verbosity level}</code></li>
 	 * 	<li><code>-o|--option &lt;OPTION_NAME=value&gt;</code></li>
+	 * 	<li><code>-b|--batch {input file}</code> (parses each line)</li>
+	 * 	<li><code>-t|--threads &lt;thread count&gt;</code></li>
+	 * 	<li><code>-p|--port &lt;port&gt;</code> (serves parses over HTTP)</li>
+	 * 	<li><code>-c|--compile &lt;output file&gt;</code> (writes a
+	 * 		{@link BinaryGrammar binary grammar} instead of parsing)</li>
 	 * 	<li><code>-h|--help (prints usage information)</code></li>
 	 *	<li><code>&lt;token1 ... token<em>n</em>&gt;</code>
 	 * 		(or <code>-</code> for standard input)</li>
@@ -354,7 +373,7 @@ public class Pep implements ParserListener {
 			
 			opts.addOption(OptionBuilder.withLongOpt("seed")
 					.withDescription("the seed category to parse for")
-					.hasArg().isRequired().withArgName("seed category")
+					.hasArg().withArgName("seed category")
 					.create('s'));
 			
 			opts.addOption(OptionBuilder.withLongOpt("verbose")
@@ -370,6 +389,30 @@ public class Pep implements ParserListener {
 					.withDescription("use value for given property")
 					.create( "o" ));			
 			
+			opts.addOption(OptionBuilder.withLongOpt("batch")
+					.withDescription("parses each line of a file (or of"
+						+ " stdin, if none or - is given)")
+					.hasOptionalArg().withArgName("input file")
+					.create('b'));
+			
+			opts.addOption(OptionBuilder.withLongOpt("threads")
+					.withDescription("the number of threads parsing in"
+						+ " batch mode (default: one per processor)")
+					.hasArg().withArgName("thread count")
+					.create('t'));
+			
+			opts.addOption(OptionBuilder.withLongOpt("port")
+					.withDescription("serves parses over HTTP on a local"
+						+ " port, for every grammar given with -g")
+					.hasArg().withArgName("port")
+					.create('p'));
+			
+			opts.addOption(OptionBuilder.withLongOpt("compile")
+					.withDescription("writes the grammar to a binary grammar"
+						+ " file instead of parsing")
+					.hasArg().withArgName("output file")
+					.create('c'));
+			
 			opts.addOption(OptionBuilder.withLongOpt("help")
 					.withDescription("prints this message")
 					.create('h'));
@@ -406,9 +449,45 @@ public class Pep implements ParserListener {
 						}
 					}
 					
+					if(line.hasOption('c')) {
+						BinaryGrammar.write(Pep.loadGrammar(
+								line.getOptionValue('g')),
+							new File(line.getOptionValue('c')));
+						return;
+					}
+					if(!line.hasOption('s')) {
+						throw new ParseException(
+								"Missing required option: s");
+					}
+					
 					Pep pep = new Pep(options);
-					Grammar grammar = new GrammarParser(
-						Pep.findGrammar(line.getOptionValue('g'))).parse();
+					Category seed = new Category(line.getOptionValue('s'));
+					if(line.hasOption('p')) {
+						int port = Integer.parseInt(line.getOptionValue('p'));
+						List<Grammar> grammars = new ArrayList<Grammar>();
+						for(String g : line.getOptionValues('g')) {
+							grammars.add(Pep.loadGrammar(g));
+						}
+						
+						pep.serve(grammars, seed, port);
+						return;
+					}
+					
+					Grammar grammar
+						= Pep.loadGrammar(line.getOptionValue('g'));
+					
+					if(line.hasOption('b')) {
+						int threads = Integer.parseInt(line.getOptionValue('t',
+							Integer.toString(
+								Runtime.getRuntime().availableProcessors())));
+						if(threads < 1) {
+							throw new PepException("threads < 1: " + threads);
+						}
+						
+						pep.parseBatch(grammar, seed, line.getOptionValue('b'),
+								threads);
+						return;
+					}
 					
 					List<?> ts = line.getArgList();
 					List<String> tokens = null;
@@ -424,8 +503,7 @@ public class Pep implements ParserListener {
 					
 					pep.lastParseStart = System.currentTimeMillis();
 					try {
-						pep.parse(grammar, tokens,
-							new Category(line.getOptionValue('s')));
+						pep.parse(grammar, tokens, seed);
 					}
 					catch(PepException ignore) {
 						// ignore here, we're listening
@@ -447,6 +525,250 @@ public class Pep implements ParserListener {
 		}
 	}
 	
+	/**
+	 * Parses each line of the specified input as a separate string of tokens
+	 * separated by white space, using a {@link BatchParser batch parser} with
+	 * the specified number of threads. For each line, in input order, a line
+	 * is printed to System.out containing the parse's status, its number of
+	 * parse trees, the time taken to parse it in milliseconds, and the
+	 * string, separated by tabs. Errors are also printed to System.err
+	 * along with their line numbers.
+	 * @param input The name of the file to read, or <code>null</code> or
+	 * &quot;<code>-</code>&quot; for the standard input.
+	 */
+	void parseBatch(Grammar grammar, Category seed, String input, int threads)
+			throws PepException {
+		// no tracing of edges from many threads at once, just the timing
+		Timer timer = new Timer();
+		EarleyParser p = new EarleyParser(grammar, timer);
+		if(parserOptions != null) {
+			for(Map.Entry<ParserOption, Boolean> entry
+					: parserOptions.entrySet()) {
+				p.setOption(entry.getKey(), entry.getValue());
+			}
+		}
+		
+		InputStream in = System.in;
+		if(input != null && !input.equals("-")) {
+			try {
+				in = new FileInputStream(input);
+			}
+			catch(IOException io) {
+				throw new PepException("problem opening input", io);
+			}
+		}
+		
+		Lines lines = new Lines(new BufferedReader(new InputStreamReader(in)));
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out),
+				true); // each line as soon as it is printed, for pipelines
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long start = System.currentTimeMillis();
+		int count = 0;
+		try {
+			Iterator<Parse> parses
+				= new BatchParser(p, executor).iterator(lines, seed);
+			while(parses.hasNext()) {
+				Parse parse = parses.next();
+				count++;
+				
+				Status status = parse.getStatus();
+				BigInteger trees = (status == Status.ACCEPT)
+					? parse.countParseTrees() : BigInteger.ZERO;
+				out.println(status + "\t" + trees + "\t"
+						+ String.format(Locale.ROOT, "%.3f",
+							timer.millis(parse))
+						+ "\t" + Pep.join(parse.getTokens()));
+				
+				if(parse.getError() != null) {
+					Pep.printError("line " + count + ": "
+							+ parse.getError().getMessage());
+				}
+			}
+		}
+		finally {
+			out.flush();
+			executor.shutdownNow();
+			lines.close();
+		}
+		
+		if(lines.error != null) {
+			throw new PepException("problem reading input", lines.error);
+		}
+		
+		Pep.printMessage("Parsed " + count + " strings in "
+				+ (System.currentTimeMillis() - start) + " ms on " + threads
+				+ " threads", Pep.V_STATS);
+	}
+	
+	/**
+	 * Starts a {@link ParseServer parse server} for the specified grammars,
+	 * listening on the specified port of the local host only, with the
+	 * specified seed category as the default. Requests are handled on a
+	 * thread pool that starts threads as they are needed, so that each
+	 * request underway has a thread of its own. The server runs until the
+	 * process is stopped.
+	 */
+	void serve(List<Grammar> grammars, Category seed, int port)
+			throws PepException {
+		ParseServer server;
+		try {
+			server = new ParseServer(new InetSocketAddress(
+					InetAddress.getByName(null), port), // loopback
+					Executors.newCachedThreadPool());
+		}
+		catch(IOException io) {
+			throw new PepException("problem starting server", io);
+		}
+		
+		server.setDefaultSeed(seed);
+		for(Grammar g : grammars) {
+			EarleyParser p = new EarleyParser(g);
+			if(parserOptions != null) {
+				for(Map.Entry<ParserOption, Boolean> entry
+						: parserOptions.entrySet()) {
+					p.setOption(entry.getKey(), entry.getValue());
+				}
+			}
+			
+			g.compile(); // before the first request
+			server.addParser(p);
+		}
+		
+		server.start();
+		InetSocketAddress a = server.getAddress();
+		Pep.printMessage("Serving " + server.parsers.keySet() + " at http://"
+				+ a.getHostName() + ":" + a.getPort() + "/", Pep.V_WARN);
+	}
+	
+	/**
+	 * Joins tokens with spaces.
+	 */
+	private static String join(List<String> tokens) {
+		StringBuilder sb = new StringBuilder();
+		for(String t : tokens) {
+			if(sb.length() > 0) {
+				sb.append(' ');
+			}
+			
+			sb.append(t);
+		}
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Listens to the parses in batch mode only to time them. Since parses are
+	 * made on several threads at once, the time each one started is kept for
+	 * the thread making it.
+	 */
+	static class Timer implements ParserListener {
+		private ThreadLocal<Long> started = new ThreadLocal<Long>();
+		private Map<Parse, Long> times
+			= Collections.synchronizedMap(new IdentityHashMap<Parse, Long>());
+		
+		/**
+		 * Gets the time taken for the specified parse, forgetting it.
+		 * @return The time in milliseconds, or <code>0</code> if the parse
+		 * was never seeded.
+		 */
+		double millis(Parse parse) {
+			Long t = times.remove(parse);
+			return (t == null) ? 0.0 : t.longValue() / 1e6;
+		}
+		
+		public void parserSeeded(EdgeEvent edgeEvent) {
+			started.set(Long.valueOf(System.nanoTime()));
+		}
+		
+		public void parseComplete(ParseEvent parseEvent) {
+			Long s = started.get();
+			if(s != null) {
+				started.remove();
+				times.put(parseEvent.parse,
+						Long.valueOf(System.nanoTime() - s.longValue()));
+			}
+		}
+		
+		@SuppressWarnings("unused")
+		public void edgePredicted(EdgeEvent edgeEvent) {}
+		
+		@SuppressWarnings("unused")
+		public void edgeScanned(EdgeEvent edgeEvent) {}
+		
+		@SuppressWarnings("unused")
+		public void edgeCompleted(EdgeEvent edgeEvent) {}
+		
+		@SuppressWarnings("unused")
+		public void optionSet(ParserOptionEvent optionEvent) {}
+		
+		@SuppressWarnings("unused")
+		public void parseMessage(ParseEvent parseEvent, String message) {}
+		
+		@SuppressWarnings("unused")
+		public void parseError(ParseErrorEvent parseErrorEvent) {
+			// reported by parseBatch, which gets the error from the parse
+		}
+	}
+	
+	/**
+	 * The lines of a reader, each split into tokens at white space, read
+	 * only as they are iterated over. An exception thrown while reading ends
+	 * the lines and is kept.
+	 */
+	static class Lines implements Iterable<List<String>>,
+			Iterator<List<String>> {
+		static final Pattern WHITE_SPACE = Pattern.compile("\\s+");
+		
+		BufferedReader reader;
+		String next;
+		IOException error;
+		
+		Lines(BufferedReader reader) {
+			this.reader = reader;
+		}
+		
+		public Iterator<List<String>> iterator() {
+			return this;
+		}
+		
+		public boolean hasNext() {
+			if(next == null && error == null) {
+				try {
+					next = reader.readLine();
+				}
+				catch(IOException io) {
+					error = io;
+				}
+			}
+			
+			return (next != null);
+		}
+		
+		public List<String> next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			
+			String l = next.trim();
+			next = null;
+			return l.isEmpty() ? Collections.<String>emptyList()
+				: Arrays.asList(WHITE_SPACE.split(l));
+		}
+		
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		void close() {
+			try {
+				reader.close();
+			}
+			catch(IOException ignore) {
+				// nothing left to read anyway
+			}
+		}
+	}
+	
 	/**
 	 * Locates the grammar file as specified on the command line. Attempts to
 	 * find the file based on the current directory.
@@ -470,6 +792,31 @@ public class Pep implements ParserListener {
 		return g;
 	}
 	
+	/**
+	 * Loads the grammar specified on the command line, reading it directly if
+	 * it is a {@link BinaryGrammar binary grammar}, as
+	 * {@link TextGrammarParser text} if its name ends in <code>.bnf</code>,
+	 * and parsing it as XML otherwise.
+	 * @param grammarLoc The grammar location string specified on the command
+	 * line.
+	 * @throws PepException If the grammar could not be found or loaded.
+	 * @since 0.5
+	 */
+	private static final Grammar loadGrammar(String grammarLoc)
+			throws PepException {
+		File f = Pep.findGrammar(grammarLoc);
+		if(BinaryGrammar.isBinary(f)) {
+			Pep.printMessage("Loading binary grammar from " + f.getPath(),
+					Pep.V_GRAMMAR);
+			return BinaryGrammar.read(f);
+		}
+		if(f.getName().endsWith(".bnf")) {
+			return new TextGrammarParser(f).parse();
+		}
+		
+		return new GrammarParser(f).parse();
+	}
+	
 	/**
 	 * Tokenizes the string input that occurs on the command line, removing
 	 * &quot; characters.
@@ -510,140 +857,4 @@ public class Pep implements ParserListener {
 		
 		return tokens;
 	}
-	
-	// TODO make GrammarParser public (usable by users)
-	
-	/**
-	 * Parses XML grammar files. 
-	 */
-	static class GrammarParser implements ErrorHandler {
-		File grammarFile;
-		DocumentBuilder documentBuilder;
-		
-		/**
-		 * Create a grammar parser for the specified file.
-		 */
-		GrammarParser(File grammarFile) throws PepException {
-			this.grammarFile = grammarFile;
-			
-			try {
-				documentBuilder
-					= DocumentBuilderFactory.newInstance().newDocumentBuilder();
-				documentBuilder.setErrorHandler(this);
-			}
-			catch(ParserConfigurationException pce) {
-				throw new PepException("problem instantiating parser", pce);
-			}
-		}
-		
-		/**
-		 * Parse the XML file specified when this grammar parser was created,
-		 * returning a grammar.
-		 */
-		Grammar parse() throws PepException {
-			Grammar g = null;
-			
-			try {
-				Document d = documentBuilder.parse(grammarFile);
-				// validate
-				SchemaFactory sf = SchemaFactory.newInstance(
-					XMLConstants.W3C_XML_SCHEMA_NS_URI);
-				StreamSource src = new StreamSource(
-					getClass().getClassLoader().getResourceAsStream(
-							"META-INF/etc/grammar.xsd"));
-				
-				if(src.getInputStream() == null) {
-					Pep.printMessage("Unable to locate grammar.xsd", Pep.V_ALL);
-				}
-				else {
-					Schema schema = sf.newSchema(src);
-					Validator vlad = schema.newValidator();
-					
-					try {
-						vlad.validate(new DOMSource(d));
-					}
-					catch(SAXException se) {
-						throw new PepException("invalid grammar", se);
-					}
-				}
-				
-				Element root = d.getDocumentElement();
-				
-				g = new Grammar(root.getAttribute("name"));
-				Pep.printMessage("Loading grammar " + g.name + " from "
-						+ grammarFile.getPath(), Pep.V_GRAMMAR);
-				
-				NodeList rules = root.getElementsByTagName("rule");
-				Element ruleEl;
-				Category left;
-				List<Category> right;
-				for(int i = 0; i < rules.getLength(); i++) {
-					ruleEl = (Element)rules.item(i);
-					left = new Category(ruleEl.getAttribute("category"));
-					
-					NodeList rightList = ruleEl.getChildNodes();
-					right = new ArrayList<Category>(rightList.getLength());
-					
-					Node rightNode;
-					Element rightEl;
-					for(int j = 0; j < rightList.getLength(); j++) {
-						rightNode = rightList.item(j);
-						if(rightNode instanceof Element) {
-							rightEl = (Element)rightNode;
-							Attr termAttr
-								= rightEl.getAttributeNode("terminal");
-							
-							right.add(new Category(rightEl.getAttribute("name"), 
-								(termAttr != null && termAttr.getTextContent()
-									.equals("true"))));
-						}
-					}
-				
-					g.addRule(new Rule(left,
-							right.toArray(new Category[right.size()])));
-				}
-			}
-			catch(IllegalArgumentException iae) {
-				throw new PepException("problem loading grammar", iae);
-			}
-			catch(SAXException se) {
-				throw new PepException("problem parsing", se);
-			}
-			catch(IOException io) {
-				throw new PepException("problem reading grammar", io);
-			}
-			
-			Pep.printMessage(g.toString(), Pep.V_GRAMMAR);
-			Pep.printMessage("", Pep.V_GRAMMAR);
-			
-			return g;
-		}
-		
-		/**
-		 * Does nothing because an exception are generated. Present for
-		 * binary compatibility with ErrorHandler.
-		 */
-		public void error(SAXParseException e) throws SAXException {
-			// do nothing
-		}
-	
-		/**
-		 * Does nothing because an exception are generated. Present for
-		 * binary compatibility with ErrorHandler.
-		 */
-		public void fatalError(SAXParseException e) throws SAXException {
-			// do nothing
-		}
-	
-		/**
-		 * Event handler for warnings that occur during parsing. Prints a
-		 * warning message to System.err.
-		 * @see Pep#printWarning(String)
-		 */
-		public void warning(SAXParseException e) throws SAXException {
-			Pep.printWarning("line " + e.getLineNumber() + ": "
-				+ e.getMessage());
-		}
-	}
-	
 }
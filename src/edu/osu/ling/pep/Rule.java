@@ -29,17 +29,19 @@ import java.util.Arrays;
 public class Rule {
 	Category left;
 	Category[] right;
+	DottedRule dottedRule;
+	boolean preterminal;
 	
 	/**
 	 * Creates a new rule with the specified left side category and series of
-	 * categories on the right side.
+	 * categories on the right side. The right side may be empty, in which case
+	 * the rule's left side produces the empty string.
 	 * @param left The left side (trigger) for this production rule.
 	 * @param right The right side (productions) licensed for this rule's
 	 * left side.
 	 * @throws IllegalArgumentException If
 	 * <ol>
 	 * 	<li>the specified left or right categories are <code>null</code>,</li>
-	 * 	<li>the right series is zero-length,</li>
 	 * 	<li>the right side contains a <code>null</code> category.</li>
 	 * </ol> 
 	 */
@@ -50,22 +52,35 @@ public class Rule {
 		if(left.terminal) {
 			throw new IllegalArgumentException("left category is terminal");
 		}
-		if(right == null || right.length == 0) {
+		if(right == null) {
 			throw new IllegalArgumentException("no right categories");
 		}
 		
-		// check for nulls on right
+		// check for nulls on right, and for terminals while at it
 		for(Category r : right) {
 			if(r == null) {
 				throw new IllegalArgumentException(
 					"right contains null category: " + Arrays.toString(right));
 			}
+			
+			preterminal |= r.terminal;
 		}
 		
 		this.left = left;
 		this.right = right;
 	}
 	
+	/**
+	 * Creates a new rule with the same left and right sides as the specified
+	 * rule, without checking them again.
+	 * @since 0.5
+	 */
+	Rule(Rule rule) {
+		this.left = rule.left;
+		this.right = rule.right;
+		this.preterminal = rule.preterminal;
+	}
+	
 	/**
 	 * Gets the left side category of this rule.
 	 */
@@ -88,13 +103,7 @@ public class Rule {
 	 * terminal category.
 	 */
 	public boolean isPreterminal() {
-		for(Category r : right) {
-			if(r.terminal) {
-				return true;
-			}
-		}
-		
-		return false;
+		return preterminal; // determined when created
 	}
 	
 	/**
@@ -105,9 +114,18 @@ public class Rule {
 	 * @since 0.4
 	 */
 	public boolean isSingletonPreterminal() {
-		return (isPreterminal() && right.length == 1);
+		return (preterminal && right.length == 1);
 	}
 
+	/**
+	 * Tests whether this rule has an empty right side, so that its left side
+	 * produces the empty string.
+	 * @since 0.5
+	 */
+	public boolean isEmpty() {
+		return (right.length == 0);
+	}
+	
 	/**
 	 * Tests whether this rule is equal to another, with the same left and
 	 * right sides.
@@ -117,6 +135,9 @@ public class Rule {
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if(this == obj) {
+			return true;
+		}
 		if(obj instanceof Rule) {
 			Rule or = (Rule)obj;			
 			return (left.equals(or.left) && Arrays.equals(right, or.right));
@@ -0,0 +1,268 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Loads {@link Grammar grammars} written in a compact, line-oriented text
+ * format like BNF.
+ * <p>
+ * Each line gives the rules for one left side category, followed by
+ * <code>-&gt;</code> and the right sides of its rules, separated by
+ * <code>|</code>:
+ * <pre>
+ * # comments run to the end of the line
+ * S -&gt; NP VP
+ * NP -&gt; Det N | NP PP
+ * Det -&gt; "the" | "a"
+ *      | "her"
+ * Adv -&gt;
+ * </pre>
+ * Terminals are quoted with <code>&quot;</code>, within which
+ * <code>\&quot;</code> and <code>\\</code> stand for a quote and a
+ * backslash; other categories are nonterminals, and are separated by white
+ * space. A line that starts with <code>|</code> gives more right sides for
+ * the left side of the line before it, and an empty right side gives a rule
+ * producing the empty string.
+ * <p>
+ * The text is read in a single pass, each category being
+ * {@link Grammar#getCategory(String, boolean) interned} by the grammar and
+ * each rule added as soon as its right side ends, so no more than one line
+ * is held in memory at a time.
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ * @since 0.5
+ * @see GrammarParser
+ */
+public class TextGrammarParser {
+	File grammarFile;
+	Reader reader;
+	String name;
+	
+	private Grammar grammar;
+	private String line;
+	private int pos, lineNumber;
+	
+	/**
+	 * Creates a text grammar parser for the specified file, which must be
+	 * encoded as UTF-8. The grammar is named after the file, without its
+	 * extension.
+	 */
+	public TextGrammarParser(File grammarFile) {
+		this.grammarFile = grammarFile;
+		
+		name = grammarFile.getName();
+		int dot = name.lastIndexOf('.');
+		if(dot > 0) {
+			name = name.substring(0, dot);
+		}
+	}
+	
+	/**
+	 * Creates a text grammar parser that reads a grammar with the specified
+	 * name from a reader. The reader is not closed when the grammar has been
+	 * read.
+	 */
+	public TextGrammarParser(Reader reader, String name) {
+		this.reader = reader;
+		this.name = name;
+	}
+	
+	/**
+	 * Reads the grammar this text grammar parser was created for.
+	 * @throws PepException If the grammar could not be read or a line is not
+	 * a well formed list of rules.
+	 */
+	public synchronized Grammar parse() throws PepException {
+		grammar = new Grammar(name);
+		Pep.printMessage("Loading grammar " + name + ((grammarFile == null)
+					? "" : " from " + grammarFile.getPath()),
+				Pep.V_GRAMMAR);
+		
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader((reader == null)
+				? new InputStreamReader(new FileInputStream(grammarFile),
+					BinaryGrammar.UTF8)
+				: reader);
+			
+			List<Category> right = new ArrayList<Category>();
+			Category left = null;
+			lineNumber = 0;
+			
+			while((line = in.readLine()) != null) {
+				lineNumber++;
+				pos = 0;
+				skipSpace();
+				if(atEnd()) {
+					continue;
+				}
+				
+				if(line.charAt(pos) == '|') {
+					if(left == null) {
+						throw error("no left side to continue");
+					}
+				}
+				else {
+					if(line.charAt(pos) == '"') {
+						throw error("left side is a terminal");
+					}
+					
+					left = grammar.getCategory(symbol(), false);
+					skipSpace();
+					if(!line.startsWith("->", pos)) {
+						throw error("expected ->");
+					}
+					
+					pos += 2;
+				}
+				
+				while(true) { // pos is at the start of a right side, or at |
+					if(!atEnd() && line.charAt(pos) == '|') {
+						pos++;
+					}
+					
+					skipSpace();
+					while(!atEnd() && line.charAt(pos) != '|') {
+						right.add((line.charAt(pos) == '"')
+							? grammar.getCategory(quoted(), true)
+							: grammar.getCategory(symbol(), false));
+						skipSpace();
+					}
+					
+					grammar.addRule(new Rule(left,
+							right.toArray(new Category[right.size()])));
+					right.clear();
+					
+					if(atEnd()) {
+						break;
+					}
+				}
+			}
+		}
+		catch(IOException io) {
+			throw new PepException("problem reading grammar", io);
+		}
+		finally {
+			line = null;
+			if(in != null && reader == null) {
+				try {
+					in.close();
+				}
+				catch(IOException ignore) {
+					// already read
+				}
+			}
+		}
+		
+		if(Pep.verbosity >= Pep.V_GRAMMAR) { // slow for large grammars
+			Pep.printMessage(grammar.toString(), Pep.V_GRAMMAR);
+			Pep.printMessage("", Pep.V_GRAMMAR);
+		}
+		
+		Grammar g = grammar;
+		grammar = null;
+		return g;
+	}
+	
+	/**
+	 * Helper for parse that skips white space.
+	 */
+	private void skipSpace() {
+		while(pos < line.length()
+				&& Character.isWhitespace(line.charAt(pos))) {
+			pos++;
+		}
+	}
+	
+	/**
+	 * Helper for parse that tests whether the rest of the line is empty or
+	 * a comment, assuming white space has been skipped.
+	 */
+	private boolean atEnd() {
+		return (pos == line.length() || line.charAt(pos) == '#');
+	}
+	
+	/**
+	 * Helper for parse that reads an unquoted category name, which ends at
+	 * white space, <code>|</code>, <code>&quot;</code>, <code>#</code>, or
+	 * <code>-&gt;</code>.
+	 */
+	private String symbol() throws PepException {
+		int start = pos;
+		while(pos < line.length()) {
+			char c = line.charAt(pos);
+			if(Character.isWhitespace(c) || c == '|' || c == '"' || c == '#'
+					|| line.startsWith("->", pos)) {
+				break;
+			}
+			
+			pos++;
+		}
+		
+		if(pos == start) {
+			throw error("expected a category");
+		}
+		
+		return line.substring(start, pos);
+	}
+	
+	/**
+	 * Helper for parse that reads a quoted terminal name, starting at its
+	 * opening quote.
+	 */
+	private String quoted() throws PepException {
+		int start = ++pos;
+		StringBuilder sb = null; // only needed for escapes
+		while(pos < line.length()) {
+			char c = line.charAt(pos);
+			if(c == '"') {
+				String s = (sb == null) ? line.substring(start, pos)
+					: sb.append(line, start, pos).toString();
+				pos++;
+				return s;
+			}
+			if(c == '\\') {
+				if(sb == null) {
+					sb = new StringBuilder();
+				}
+				
+				sb.append(line, start, pos);
+				if(++pos == line.length()) {
+					break;
+				}
+				
+				start = pos; // keep the escaped character
+			}
+			
+			pos++;
+		}
+		
+		throw error("unterminated terminal");
+	}
+	
+	/**
+	 * Helper for parse that creates an exception for the current line.
+	 */
+	private PepException error(String message) {
+		return new PepException("line " + lineNumber + ", column " + (pos + 1)
+				+ ": " + message);
+	}
+}
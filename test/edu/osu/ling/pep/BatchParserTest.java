@@ -0,0 +1,131 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import static edu.osu.ling.pep.Status.ACCEPT;
+import static edu.osu.ling.pep.Status.ERROR;
+import static edu.osu.ling.pep.Status.REJECT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+
+/**
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ */
+public class BatchParserTest extends PepFixture {
+	
+	ExecutorService executor;
+	EarleyParser parser;
+	List<List<String>> strings;
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		executor = Executors.newFixedThreadPool(4);
+		parser = new EarleyParser(grammar);
+		
+		List<String> rejected = Arrays.asList("the", "boy", "boy");
+		strings = new ArrayList<List<String>>();
+		for(int i = 0; i < 50; i++) {
+			strings.add((i % 3 == 0) ? rejected : tokens);
+		}
+		strings.add(Collections.<String>emptyList()); // an error
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+		super.tearDown();
+	}
+	
+	public final void testParseAll() throws Exception {
+		BatchParser batch = new BatchParser(parser, executor, 5);
+		List<Parse> parses = batch.parseAll(strings, seed);
+		
+		Assert.assertEquals(strings.size(), parses.size());
+		for(int i = 0; i < strings.size() - 1; i++) {
+			Parse p = parses.get(i);
+			Assert.assertEquals(strings.get(i), p.getTokens());
+			Assert.assertEquals((i % 3 == 0) ? REJECT : ACCEPT, p.getStatus());
+			Assert.assertNull(p.getError());
+		}
+		
+		Parse error = parses.get(strings.size() - 1);
+		Assert.assertEquals(ERROR, error.getStatus());
+		Assert.assertNotNull(error.getError());
+		
+		Assert.assertEquals(parser.parse(tokens, seed).getParseTrees(),
+				parses.get(1).getParseTrees());
+	}
+	
+	public final void testRuntimeFailure() throws Exception {
+		final List<String> bad = new ArrayList<String>(tokens);
+		strings.set(1, bad);
+		EarleyParser failing = new EarleyParser(grammar) {
+			@Override
+			public Parse parse(Iterable<String> tokens, Category seed,
+					ParseWorkspace workspace) throws PepException {
+				if(tokens == bad) {
+					throw new IllegalStateException("broken");
+				}
+				
+				return super.parse(tokens, seed, workspace);
+			}
+		};
+		
+		List<Parse> parses
+			= new BatchParser(failing, executor, 2).parseAll(strings, seed);
+		Assert.assertEquals(strings.size(), parses.size());
+		
+		Parse error = parses.get(1);
+		Assert.assertEquals(bad, error.getTokens());
+		Assert.assertEquals(ERROR, error.getStatus());
+		Assert.assertTrue(
+				error.getError().getCause() instanceof IllegalStateException);
+		Assert.assertEquals(ACCEPT, parses.get(2).getStatus());
+	}
+	
+	public final void testIterator() {
+		// one string ahead, so each parse is returned as soon as it is done
+		Iterator<Parse> i
+			= new BatchParser(parser, executor, 1).iterator(strings, seed);
+		for(List<String> s : strings) {
+			Assert.assertTrue(i.hasNext());
+			Assert.assertEquals(s, i.next().getTokens());
+		}
+		
+		Assert.assertFalse(i.hasNext());
+	}
+	
+	public final void testInvalid() {
+		try {
+			new BatchParser(parser, executor, 0);
+			Assert.fail("able to create batch parser with empty window");
+		}
+		catch(IllegalArgumentException expected) {}
+		
+		try {
+			new BatchParser(null, executor);
+			Assert.fail("able to create batch parser without parser");
+		}
+		catch(IllegalArgumentException expected) {}
+	}
+}
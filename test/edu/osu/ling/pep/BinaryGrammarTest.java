@@ -0,0 +1,109 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+
+/**
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ */
+public class BinaryGrammarTest extends PepFixture {
+	
+	File file;
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		file = File.createTempFile("pep", ".pepg");
+		file.deleteOnExit();
+	}
+	
+	public final void testRoundTrip() throws PepException {
+		grammar.addRule(new Rule(VP)); // empty rule
+		BinaryGrammar.write(grammar, file);
+		Assert.assertTrue(BinaryGrammar.isBinary(file));
+		
+		Grammar g = BinaryGrammar.read(file);
+		Assert.assertEquals(grammar.name, g.name);
+		Assert.assertEquals(grammar.categories, g.categories);
+		for(int i = 1; i < grammar.categories.size(); i++) {
+			Category c = g.categories.get(i);
+			Assert.assertEquals(i, c.id);
+			if(!c.terminal) {
+				Assert.assertEquals(
+						new ArrayList<Rule>(grammar.getRules(c)),
+						new ArrayList<Rule>(g.getRules(c)));
+			}
+		}
+		
+		EarleyParser parser = new EarleyParser(g);
+		Parse parse = parser.parse(tokens, seed);
+		Assert.assertEquals(Status.ACCEPT, parse.getStatus());
+		Assert.assertEquals(
+				new EarleyParser(grammar).parse(tokens, seed).getParseTrees(),
+				parse.getParseTrees());
+	}
+	
+	public final void testSample() throws PepException {
+		File xml = new File("samples/tiny.xml");
+		Assert.assertFalse(BinaryGrammar.isBinary(xml));
+		
+		Grammar grammar = new GrammarParser(xml).parse();
+		BinaryGrammar.write(grammar, file);
+		Grammar g = BinaryGrammar.read(file);
+		Assert.assertEquals(grammar.getAllRules(), g.getAllRules());
+		
+		List<String> tokens = Arrays.asList(
+				"Mary", "saw", "her", "dragon", "in", "the", "cave");
+		Category s = new Category("S");
+		Assert.assertEquals(
+				new EarleyParser(grammar).parse(tokens, s).getParseTrees(),
+				new EarleyParser(g).parse(tokens, s).getParseTrees());
+	}
+	
+	public final void testInvalid() throws PepException, IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[] {'P', 'E', 'P'});
+		out.close();
+		Assert.assertFalse(BinaryGrammar.isBinary(file));
+		
+		try {
+			BinaryGrammar.read(file);
+			Assert.fail("read short file");
+		}
+		catch(PepException expected) {
+			// expected
+		}
+		
+		BinaryGrammar.write(grammar, file);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 2);
+		raf.close();
+		try {
+			BinaryGrammar.read(file);
+			Assert.fail("read truncated file");
+		}
+		catch(PepException expected) {
+			// expected
+		}
+	}
+}
@@ -10,9 +10,12 @@
  */
 package edu.osu.ling.pep;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import junit.framework.Assert;
@@ -62,10 +65,48 @@ public class ChartTest extends PepFixture {
 		}
 	}
 	
+	public final void testViews() {
+		Chart head = chart.headChart(1), tail = chart.tailChart(1);
+		Assert.assertTrue(head.contains(edge1));
+		Assert.assertFalse(head.contains(edge3));
+		Assert.assertEquals(1, tail.firstIndex().intValue());
+		
+		// grow the backing array past its initial capacity
+		Edge far = new Edge(new DottedRule(rule3), 2);
+		chart.addEdge(Chart.DEFAULT_CAPACITY * 3, far);
+		Assert.assertEquals(Chart.DEFAULT_CAPACITY * 3,
+				tail.indexOf(far).intValue());
+		Assert.assertFalse(head.contains(far));
+		Assert.assertTrue(new Chart(chart).contains(far));
+		
+		try {
+			head.addEdge(2, far);
+			Assert.fail("able to add edge outside of head chart");
+		}
+		catch(IllegalArgumentException expected) {}
+	}
+	
 	public final void testIndexOf() {
 		Assert.assertEquals(0, chart.indexOf(edge1).intValue());
 		Assert.assertEquals(0, chart.indexOf(edge2).intValue());
 		Assert.assertEquals(1, chart.indexOf(edge3).intValue());
+		
+		// equal edges, added out of order
+		Edge packed = Edge.pack(edge2, edge3);
+		chart.addEdge(5, packed);
+		chart.addEdge(3, Edge.pack(edge2, edge1));
+		Assert.assertEquals(3, chart.indexOf(packed).intValue());
+		Assert.assertEquals(3, chart.tailChart(3).indexOf(packed).intValue());
+		Assert.assertEquals(5, chart.tailChart(4).indexOf(packed).intValue());
+		Assert.assertEquals(Chart.NULL_INDEX,
+				chart.tailChart(6).indexOf(packed));
+		Assert.assertEquals(Chart.NULL_INDEX,
+				chart.subChart(0, 3).indexOf(packed));
+		Assert.assertEquals(Chart.NULL_INDEX, chart.indexOf(null));
+		
+		chart.subChart(3, 4).clear();
+		Assert.assertEquals(5, chart.indexOf(packed).intValue());
+		Assert.assertEquals(0, chart.indexOf(edge1).intValue());
 	}
 	
 	public final void testContains() {
@@ -108,7 +149,13 @@ public class ChartTest extends PepFixture {
 	 * Test method for {@link edu.osu.ling.pep.Chart#hashCode()}.
 	 */
 	public final void testHashCode() {
-		Assert.assertEquals(37 * (1 + chart.edgeSets.hashCode()), chart.hashCode());
+		SortedMap<Integer, Set<Edge>> edgeSets
+			= new TreeMap<Integer, Set<Edge>>();
+		for(Integer i : chart.indices()) {
+			edgeSets.put(i, chart.getEdges(i));
+		}
+		
+		Assert.assertEquals(37 * (1 + edgeSets.hashCode()), chart.hashCode());
 	}
 
 	/**
@@ -119,6 +166,34 @@ public class ChartTest extends PepFixture {
 				chart.addEdge(0, edge1));
 	}
 
+	public final void testGetWaitingEdges() {
+		Assert.assertEquals(1, chart.getWaitingEdges(0, D).size());
+		Assert.assertTrue(chart.getWaitingEdges(0, D).contains(edge1));
+		Assert.assertTrue(chart.getWaitingEdges(0, Y).contains(edge2));
+		Assert.assertNull(chart.getWaitingEdges(0, Z));
+		Assert.assertNull("passive edge indexed as waiting",
+				chart.getWaitingEdges(1, edge3.dottedRule.left));
+	}
+	
+	public final void testGetCompletedEdges() {
+		Assert.assertEquals(Collections.singletonList(edge3),
+				chart.getCompletedEdges(A, edge3.origin, 1));
+		Assert.assertEquals(Collections.singleton(A),
+				chart.getCompletedCategories(edge3.origin, 1));
+		Assert.assertTrue(chart.getCompletedEdges(B, edge3.origin, 1)
+				.isEmpty());
+		Assert.assertTrue("active edge indexed as completed",
+				chart.getCompletedCategories(edge2.origin, 0).isEmpty());
+		Assert.assertTrue(chart.headChart(1).getCompletedEdges(A,
+				edge3.origin, 1).isEmpty());
+		Assert.assertEquals(chart.getCompletedEdges(A, edge3.origin, 1),
+				new Chart(chart).getCompletedEdges(A, edge3.origin, 1));
+		
+		chart.clear();
+		Assert.assertTrue(chart.getCompletedCategories(edge3.origin, 1)
+				.isEmpty());
+	}
+	
 	public final void testGetEdge() {
 		Set<Edge> zeroEdges = chart.getEdges(0);
 		Assert.assertTrue(zeroEdges.contains(edge1));
@@ -61,6 +61,22 @@ public class DottedRuleTest extends RuleTest {
 			Assert.fail("able to advance dot of passive edge");
 		}
 		catch(IndexOutOfBoundsException expected) {}
+		
+		// dotted rules for a rule's positions are built once and linked
+		DottedRule dr = Edge.predictFor(rule1, 0).dottedRule;
+		Assert.assertSame(dr, Edge.predictFor(rule1, 3).dottedRule);
+		for(int i = 1; i <= rule1.right.length; i++) {
+			DottedRule next = DottedRule.advanceDot(dr);
+			Assert.assertSame(next, DottedRule.advanceDot(dr));
+			Assert.assertEquals(new DottedRule(rule1, i), next);
+			dr = next;
+		}
+		
+		try {
+			DottedRule.advanceDot(dr);
+			Assert.fail("able to advance dot past end of right side");
+		}
+		catch(IndexOutOfBoundsException expected) {}
 	}
 	
 	public final void testStartRule() {
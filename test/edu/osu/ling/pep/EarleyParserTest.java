@@ -11,12 +11,22 @@
 package edu.osu.ling.pep;
 
 import static edu.osu.ling.pep.ParserOption.IGNORE_TERMINAL_CASE;
+import static edu.osu.ling.pep.ParserOption.LEO_RIGHT_RECURSION;
+import static edu.osu.ling.pep.ParserOption.LOOKAHEAD_PREDICTION;
+import static edu.osu.ling.pep.ParserOption.PACK_FOREST;
 import static edu.osu.ling.pep.ParserOption.PREDICT_FOR_PRETERMINALS;
 import static edu.osu.ling.pep.Status.ACCEPT;
 import static edu.osu.ling.pep.Status.ERROR;
 import static edu.osu.ling.pep.Status.REJECT;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import junit.framework.Assert;
@@ -194,13 +204,15 @@ public class EarleyParserTest extends PepFixture
 	}
 
 	/**
-	 * Test method for {@link edu.osu.ling.pep.EarleyParser#predict(Chart, int)}.
+	 * Test method for {@link edu.osu.ling.pep.EarleyParser#predict(EarleyParser.Context, int)}.
 	 */
 	public final void testPredict() {
 		Chart chart = new Chart();
 		chart.addEdge(0, new Edge(DottedRule.startRule(seed), 0));
+		EarleyParser.Context context = earleyParser.newContext(chart,
+				new ParseWorkspace());
 		
-		earleyParser.predict(chart, 0);
+		earleyParser.predict(context, 0);
 		
 		Set<Edge> zeroEdges = chart.getEdges(0); 
 		Assert.assertTrue("rule S -> NP VP not predicted",
@@ -212,15 +224,17 @@ public class EarleyParserTest extends PepFixture
 	}
 	
 	/**
-	 * Test method for {@link edu.osu.ling.pep.EarleyParser#scan(Chart, int, String)}.
+	 * Test method for {@link edu.osu.ling.pep.EarleyParser#scan(EarleyParser.Context, int, String)}.
 	 */
 	public final void testScan() throws PepException {
 		Chart chart = new Chart();
 		chart.addEdge(0, new Edge(DottedRule.startRule(seed), 0));
+		EarleyParser.Context context = earleyParser.newContext(chart,
+				new ParseWorkspace());
 		
-		earleyParser.predict(chart, 0);
+		earleyParser.predict(context, 0);
 		String zeroToken = tokens.get(0);
-		earleyParser.scan(chart, 0, zeroToken);
+		earleyParser.scan(context, 0, zeroToken);
 		Set<Edge> zeroEdges = chart.getEdges(1);
 		Edge scanEdge = new Edge(new DottedRule(new Rule(Det, the), 0), 0);
 		scanEdge = Edge.scan(scanEdge, zeroToken, true);
@@ -230,15 +244,17 @@ public class EarleyParserTest extends PepFixture
 	}
 	
 	/**
-	 * Test method for {@link edu.osu.ling.pep.EarleyParser#complete(Chart, int)}.
+	 * Test method for {@link edu.osu.ling.pep.EarleyParser#complete(EarleyParser.Context, int)}.
 	 */
 	public final void testComplete() throws PepException {
 		Chart chart = new Chart();
 		chart.addEdge(0, new Edge(DottedRule.startRule(seed), 0));
+		EarleyParser.Context context = earleyParser.newContext(chart,
+				new ParseWorkspace());
 		
-		earleyParser.predict(chart, 0);
-		earleyParser.scan(chart, 0, tokens.get(0));
-		earleyParser.complete(chart, 1);
+		earleyParser.predict(context, 0);
+		earleyParser.scan(context, 0, tokens.get(0));
+		earleyParser.complete(context, 1);
 		
 		Edge expected = new Edge(new DottedRule(new Rule(NP, Det, N), 1), 0);
 		for(Edge e : chart.getEdges(1)) {
@@ -251,6 +267,283 @@ public class EarleyParserTest extends PepFixture
 		Assert.fail("rule NP -> Det * N not completed");
 	}
 	
+	public final void testLexicalAmbiguity() throws PepException {
+		Grammar g = new Grammar("lexical");
+		g.addRule(new Rule(A, X));
+		g.addRule(new Rule(A, Y));
+		g.addRule(new Rule(X, a));
+		g.addRule(new Rule(Y, a));
+		g.addRule(new Rule(X, new Category("A", true)));
+		
+		EarleyParser p = new EarleyParser(g);
+		Assert.assertEquals(2, p.parse("a", A).getParseTrees().size());
+		Assert.assertEquals(1, p.parse("A", A).getParseTrees().size());
+		
+		// every reading of a token is kept when case is ignored
+		p.setOption(IGNORE_TERMINAL_CASE, Boolean.TRUE);
+		Assert.assertEquals(3, p.parse("a", A).getParseTrees().size());
+		Assert.assertEquals(2, p.parse("a", X).getParseTrees().size());
+		Assert.assertEquals(REJECT, p.parse("b", A).getStatus());
+	}
+	
+	public final void testLookaheadPrediction() throws PepException {
+		Grammar g = new Grammar("lookahead");
+		g.addRule(new Rule(A, X, Y));
+		g.addRule(new Rule(A, Y, X));
+		g.addRule(new Rule(X, a));
+		g.addRule(new Rule(Y, b));
+		
+		EarleyParser p = new EarleyParser(g);
+		Parse plain = p.parse("b a", A);
+		p.setOption(LOOKAHEAD_PREDICTION, Boolean.TRUE);
+		Parse ahead = p.parse("b a", A);
+		
+		Assert.assertEquals(ACCEPT, ahead.getStatus());
+		Assert.assertEquals(plain.getParseTrees(), ahead.getParseTrees());
+		Assert.assertFalse(ahead.chart.contains(Edge.predictFor(
+				new Rule(A, X, Y), 0)));
+		Assert.assertTrue(ahead.chart.countEdges()
+				< plain.chart.countEdges());
+		Assert.assertEquals(REJECT, p.recognize("b b", A));
+		
+		p.setOption(IGNORE_TERMINAL_CASE, Boolean.TRUE);
+		Assert.assertEquals(ACCEPT, p.recognize("B A", A));
+		
+		// rules with terminals first, predicted as preterminals
+		p.setGrammar(mixed);
+		for(String s : new String[]{"a a", "b a", "a b a"}) {
+			Assert.assertEquals(ACCEPT, p.recognize(s, A));
+		}
+		
+		Assert.assertEquals(REJECT, p.recognize("a b", A));
+	}
+	
+	public final void testLeoRightRecursion() throws PepException {
+		Grammar g = new Grammar("right");
+		g.addRule(new Rule(A, X, A));
+		g.addRule(new Rule(A, X));
+		g.addRule(new Rule(X, a));
+		
+		List<String> t = new ArrayList<String>();
+		for(int i = 0; i < 20; i++) {
+			t.add("a");
+		}
+		
+		EarleyParser p = new EarleyParser(g);
+		Parse plain = p.parse(t, A);
+		p.setOption(LEO_RIGHT_RECURSION, Boolean.TRUE);
+		Parse leo = p.parse(t, A);
+		
+		Assert.assertEquals(ACCEPT, leo.getStatus());
+		Assert.assertEquals(1, leo.getParseTrees().size());
+		Assert.assertEquals(plain.getParseTrees(), leo.getParseTrees());
+		
+		// chain of A edges ending at the last index not completed
+		int plainCount = 0, leoCount = 0;
+		for(Edge e : plain.chart.getEdges(t.size())) {
+			if(e.isPassive() && e.dottedRule.left.equals(A)) {
+				plainCount++;
+			}
+		}
+		for(Edge e : leo.chart.getEdges(t.size())) {
+			if(e.isPassive() && e.dottedRule.left.equals(A)) {
+				leoCount++;
+			}
+		}
+		
+		Assert.assertEquals(t.size(), plainCount);
+		Assert.assertEquals(1, leoCount);
+		
+		// ambiguous, right-recursive
+		g.addRule(new Rule(A, A, A));
+		g.addRule(new Rule(X, X, X));
+		t = t.subList(0, 6);
+		
+		p = new EarleyParser(g);
+		Set<ParseTree> trees = p.parse(t, A).getParseTrees();
+		p.setOption(LEO_RIGHT_RECURSION, Boolean.TRUE);
+		Assert.assertEquals(trees, p.parse(t, A).getParseTrees());
+		
+		p.setGrammar(grammar);
+		Assert.assertEquals(earleyParser.parse(tokens, seed).getParseTrees(),
+				p.parse(tokens, seed).getParseTrees());
+	}
+	
+	public final void testEmptyRules() throws PepException {
+		Grammar g = new Grammar("empty");
+		g.addRule(new Rule(A, B, X, C));
+		g.addRule(new Rule(B));
+		g.addRule(new Rule(B, Y));
+		g.addRule(new Rule(C, D, D));
+		g.addRule(new Rule(D));
+		g.addRule(new Rule(D, b));
+		g.addRule(new Rule(X, a));
+		g.addRule(new Rule(Y, b));
+		
+		CompiledGrammar compiled = g.compile();
+		Assert.assertTrue(compiled.isNullable(B));
+		Assert.assertTrue(compiled.isNullable(C));
+		Assert.assertFalse(compiled.isNullable(A));
+		Assert.assertFalse(compiled.isNullable(a));
+		Assert.assertEquals(new Rule(B), compiled.getNullingRules(B)[0]);
+		
+		EarleyParser p = new EarleyParser(g);
+		Parse parse = p.parse("a", A);
+		Assert.assertEquals(ACCEPT, parse.getStatus());
+		Assert.assertEquals(1, parse.getParseTrees().size());
+		
+		Map<String, Set<ParseTree>> trees
+			= new HashMap<String, Set<ParseTree>>();
+		for(String s : new String[]{"a", "b a", "a b", "b a b b"}) {
+			parse = p.parse(s, A);
+			Assert.assertEquals(s, ACCEPT, parse.getStatus());
+			trees.put(s, parse.getParseTrees());
+		}
+		
+		Assert.assertEquals(2, trees.get("a b").size());
+		Assert.assertEquals(REJECT, p.recognize("a a", A));
+		Assert.assertEquals(REJECT, p.recognize("b b a", A));
+		
+		// same trees with the other options
+		for(ParserOption o : new ParserOption[] {PACK_FOREST,
+				LOOKAHEAD_PREDICTION, LEO_RIGHT_RECURSION}) {
+			p.setOption(o, Boolean.TRUE);
+			for(String s : trees.keySet()) {
+				Assert.assertEquals(o + " " + s, trees.get(s),
+						p.parse(s, A).getParseTrees());
+			}
+		}
+	}
+	
+	public final void testEmptyDerivations() throws PepException {
+		Grammar g = new Grammar("empty");
+		g.addRule(new Rule(A, B, a));
+		g.addRule(new Rule(B));
+		g.addRule(new Rule(B, C));
+		g.addRule(new Rule(C));
+		g.addRule(new Rule(C, B)); // cycle back to B
+		
+		CompiledGrammar compiled = g.compile();
+		Assert.assertEquals(2, compiled.getNullingRules(B).length);
+		Assert.assertEquals(new Rule(C), compiled.getNullingRules(C)[0]);
+		
+		Set<String> expected = new HashSet<String>(
+				Arrays.asList("[A[B][a]]", "[A[B[C]][a]]"));
+		
+		EarleyParser p = new EarleyParser(g);
+		for(ParserOption o : new ParserOption[] {null, PACK_FOREST,
+				LOOKAHEAD_PREDICTION, LEO_RIGHT_RECURSION}) {
+			if(o != null) {
+				p.setOption(o, Boolean.TRUE);
+			}
+			
+			Parse parse = p.parse("a", A);
+			Set<String> trees = new HashSet<String>();
+			for(ParseTree t : parse.getParseTrees()) {
+				trees.add(t.toString());
+			}
+			Assert.assertEquals(o + "", expected, trees);
+			Assert.assertEquals(o + "", BigInteger.valueOf(2),
+					parse.countParseTrees());
+			
+			trees.clear();
+			for(ParseTree t : parse) {
+				trees.add(t.toString());
+			}
+			Assert.assertEquals(o + "", expected, trees);
+		}
+	}
+	
+	public final void testWorkspace() throws PepException {
+		ParseWorkspace workspace = new ParseWorkspace();
+		Parse first = earleyParser.parse(tokens, seed, workspace);
+		Assert.assertEquals(ACCEPT, first.getStatus());
+		Assert.assertEquals(earleyParser.parse(tokens, seed).getChart(),
+				first.getChart());
+		
+		List<String> rejected = Arrays.asList("the", "boy", "boy");
+		for(int i = 0; i < 3; i++) {
+			Assert.assertEquals(ACCEPT,
+					earleyParser.recognize(tokens, seed, workspace));
+			Assert.assertEquals(REJECT,
+					earleyParser.recognize(rejected, seed, workspace));
+			Assert.assertEquals(REJECT, earleyParser.parse(rejected, seed,
+					workspace).getStatus());
+		}
+		
+		// the parse kept is not disturbed by reusing the workspace
+		Assert.assertEquals(earleyParser.parse(tokens, seed).getChart(),
+				first.getChart());
+		Assert.assertEquals(earleyParser.parse(tokens, seed).getParseTrees(),
+				first.getParseTrees());
+		
+		earleyParser.setOption(PACK_FOREST, Boolean.TRUE);
+		earleyParser.setOption(LOOKAHEAD_PREDICTION, Boolean.TRUE);
+		Assert.assertEquals(ACCEPT,
+				earleyParser.recognize(tokens, seed, workspace));
+		Assert.assertEquals(REJECT,
+				earleyParser.recognize(rejected, seed, workspace));
+		Assert.assertEquals(first.getParseTrees(),
+				earleyParser.parse(tokens, seed, workspace).getParseTrees());
+	}
+	
+	public final void testConcurrentParsing() throws Exception {
+		Grammar g = new Grammar("catalan");
+		g.addRule(new Rule(S, S, S));
+		g.addRule(new Rule(S, a));
+		
+		final EarleyParser p = new EarleyParser(g);
+		p.setOption(PACK_FOREST, Boolean.TRUE);
+		final List<List<String>> strings = new ArrayList<List<String>>();
+		final List<Set<ParseTree>> expected = new ArrayList<Set<ParseTree>>();
+		for(int i = 1; i <= 7; i++) {
+			String[] s = new String[i];
+			Arrays.fill(s, "a");
+			strings.add(Arrays.asList(s));
+			expected.add(p.parse(strings.get(i - 1), S).getParseTrees());
+		}
+		
+		// every thread parses with the same parser while options change
+		final List<String> failures
+			= Collections.synchronizedList(new ArrayList<String>());
+		Thread[] threads = new Thread[8];
+		for(int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for(int n = 0; n < 20; n++) {
+							for(int i = 0; i < strings.size(); i++) {
+								Set<ParseTree> trees
+									= p.parse(strings.get(i), S).getParseTrees();
+								if(!expected.get(i).equals(trees)) {
+									failures.add(strings.get(i).toString());
+								}
+							}
+						}
+					}
+					catch(PepException pe) {
+						failures.add(pe.toString());
+					}
+				}
+			};
+			
+			threads[t].start();
+		}
+		
+		for(int n = 0; n < 100; n++) {
+			p.setOption(LOOKAHEAD_PREDICTION, Boolean.valueOf(n % 2 == 0));
+			p.setOption(LEO_RIGHT_RECURSION, Boolean.valueOf(n % 3 == 0));
+			Thread.yield();
+		}
+		
+		for(Thread t : threads) {
+			t.join();
+		}
+		
+		Assert.assertEquals(Collections.emptyList(), failures);
+	}
+	
 	@SuppressWarnings("unused")
 	public void edgeCompleted(EdgeEvent edgeEvent) {}
 
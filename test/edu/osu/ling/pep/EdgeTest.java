@@ -10,6 +10,7 @@
  */
 package edu.osu.ling.pep;
 
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -94,9 +95,28 @@ public class EdgeTest extends PepFixture {
 		Edge ce1 = Edge.complete(edge2, edge2Completer);
 		Edge ce2 = Edge.complete(ce1, ce1Completer);
 		
-		Set<Edge> bases = new LinkedHashSet<Edge>(ce1.bases);
+		Set<Edge> bases = new LinkedHashSet<Edge>(ce1.getBases());
 		bases.add(ce1Completer);
 		Assert.assertEquals(bases, ce2.getBases());
+		
+		// bases are linked, not copied
+		Assert.assertSame(ce1, ce2.predecessor);
+		Assert.assertSame(ce1Completer, ce2.basis);
+		Assert.assertTrue(Arrays.equals(
+				new Edge[] {edge2Completer, ce1Completer}, ce2.getBasisArray()));
+		
+		// the same edge completing two categories is kept twice
+		Edge y = new Edge(new DottedRule(new Rule(Y, a), 1), 0);
+		Edge yy = Edge.complete(Edge.complete(
+				Edge.predictFor(new Rule(X, Y, Y), 0), y), y);
+		Assert.assertTrue(Arrays.equals(new Edge[] {y, y},
+				yy.getBasisArray()));
+		Assert.assertEquals(2, ParseTree.newParseTree(yy).getChildren().length);
+		Assert.assertFalse(yy.equals(Edge.complete(Edge.complete(
+				Edge.predictFor(new Rule(X, Y, Y), 0), y),
+				new Edge(new DottedRule(new Rule(Y, b), 1), 0))));
+		Assert.assertEquals(yy, Edge.complete(Edge.complete(
+				Edge.predictFor(new Rule(X, Y, Y), 0), y), y));
 	}
 	
 	/**
@@ -0,0 +1,132 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.xml.sax.SAXParseException;
+
+
+/**
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ */
+public class GrammarParserTest extends PepFixture {
+	
+	static final String TEST_GRAMMAR = "<?xml version=\"1.0\"?>\n"
+		+ "<grammar name=\"test\">\n"
+		+ "\t<rule category=\"S\"><category name=\"NP\"/>"
+		+ "<category name=\"VP\"/></rule>\n"
+		+ "\t<rule category=\"NP\"><category name=\"Det\"/>"
+		+ "<category name=\"N\"/></rule>\n"
+		+ "\t<rule category=\"VP\"><category name=\"left\" terminal=\"true\"/>"
+		+ "</rule>\n"
+		+ "\t<rule category=\"Det\"><category name=\"a\" terminal=\"true\"/>"
+		+ "</rule>\n"
+		+ "\t<rule category=\"Det\"><category name=\"the\" terminal=\"true\"/>"
+		+ "</rule>\n"
+		+ "\t<rule category=\"N\"><category name=\"boy\" terminal=\"true\"/>"
+		+ "</rule>\n"
+		+ "\t<rule category=\"N\"><category name=\"girl\" terminal=\"true\"/>"
+		+ "</rule>\n"
+		+ "</grammar>\n";
+	
+	public final void testParse() throws PepException {
+		Grammar g = parser(TEST_GRAMMAR).parse();
+		Assert.assertEquals("test", g.getName());
+		Assert.assertEquals(grammar.getAllRules(), g.getAllRules());
+		for(int i = 0; i < grammar.categories.size(); i++) {
+			Assert.assertEquals(grammar.categories.get(i), g.categories.get(i));
+		}
+		
+		GrammarParser p = parser(TEST_GRAMMAR);
+		p.setValidating(false);
+		Assert.assertFalse(p.isValidating());
+		Assert.assertEquals(grammar.getAllRules(), p.parse().getAllRules());
+	}
+	
+	public final void testSample() throws PepException {
+		Grammar g = new GrammarParser(new File("samples/tiny.xml")).parse();
+		Assert.assertEquals("tiny", g.getName());
+		
+		List<String> tokens = Arrays.asList(
+				"Mary", "saw", "her", "duck");
+		Parse parse = new EarleyParser(g).parse(tokens, new Category("S"));
+		Assert.assertEquals(Status.ACCEPT, parse.getStatus());
+		Assert.assertEquals(2, parse.getParseTrees().size());
+	}
+	
+	public final void testEmptyRule() throws PepException {
+		Grammar g = parser("<grammar name=\"e\"><rule category=\"S\"/>"
+				+ "</grammar>").parse();
+		Assert.assertTrue(g.getRules(new Category("S"))
+				.contains(new Rule(new Category("S"))));
+	}
+	
+	public final void testInvalid() {
+		String invalid = "<grammar name=\"bad\"><rule category=\"S\">"
+			+ "<category name=\"a\" terminal=\"true\"/></rule>"
+			+ "<lexicon/></grammar>";
+		try {
+			parser(invalid).parse();
+			Assert.fail("loaded invalid grammar");
+		}
+		catch(PepException expected) {
+			Assert.assertEquals("invalid grammar", expected.getMessage());
+			Assert.assertTrue(expected.getCause() instanceof SAXParseException);
+		}
+		
+		GrammarParser p = parser(invalid);
+		p.setValidating(false);
+		try {
+			Assert.assertEquals(1, p.parse().getAllRules().size());
+		}
+		catch(PepException pe) {
+			Assert.fail(pe.getMessage());
+		}
+		
+		try {
+			parser("<grammar name=\"bad\"><rule category=\"S\">").parse();
+			Assert.fail("loaded malformed grammar");
+		}
+		catch(PepException expected) {
+			// expected
+		}
+		
+		p = parser("<grammar name=\"bad\"><rule category=\"S\">"
+				+ "<category name=\"\"/></rule></grammar>");
+		p.setValidating(false);
+		try {
+			p.parse();
+			Assert.fail("loaded empty category");
+		}
+		catch(PepException expected) {
+			Assert.assertTrue(
+					expected.getCause() instanceof IllegalArgumentException);
+		}
+	}
+	
+	static GrammarParser parser(String xml) {
+		try {
+			return new GrammarParser(
+					new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		}
+		catch(UnsupportedEncodingException uee) {
+			throw new AssertionError(uee);
+		}
+	}
+}
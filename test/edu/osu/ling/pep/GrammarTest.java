@@ -10,6 +10,7 @@
  */
 package edu.osu.ling.pep;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -81,4 +82,61 @@ public class GrammarTest extends PepFixture {
 		Assert.assertEquals(setOfrules, g.getRules(rule3.left));
 	}
 
+	public final void testCompile() {
+		CompiledGrammar cg = g.compile();
+		Assert.assertSame(cg, g.compile());
+		Assert.assertSame(g, cg.getGrammar());
+		Assert.assertEquals(Arrays.asList(rule1, rule2), cg.getRules(A));
+		Assert.assertEquals(0, cg.getRules(B).size());
+		Assert.assertFalse(cg.needsPreterminalPrediction());
+		
+		g.addRule(rule4); // A -> X a
+		Assert.assertNotSame(cg, g.compile());
+		cg = g.compile();
+		Assert.assertEquals(Arrays.asList(rule1, rule2, rule4),
+				cg.getRules(A));
+		Assert.assertTrue(cg.needsPreterminalPrediction());
+		Assert.assertSame(cg, g.compile());
+		
+		// X -> Y Z is only predicted for A by way of A -> X a
+		Assert.assertEquals(Arrays.asList(A, X),
+				Arrays.asList(cg.getClosure(A, true)));
+		Assert.assertEquals(Arrays.asList(A),
+				Arrays.asList(cg.getClosure(A, false)));
+		Assert.assertEquals(0, cg.getClosure(B, true).length);
+	}
+	
+	public final void testGetCategory() {
+		Category x = g.getCategory("X", false);
+		Assert.assertSame(x, g.getCategory("X", false));
+		Assert.assertEquals(X, x);
+		Assert.assertFalse(x.equals(g.getCategory("X", true)));
+		
+		// rules are made up of the grammar's own categories
+		for(Rule r : g.getRules(X)) {
+			Assert.assertSame(x, r.left);
+			for(Category c : r.right) {
+				Assert.assertSame(c, g.getCategory(c.name, c.terminal));
+			}
+		}
+		
+		// numbered densely, starting with START
+		Assert.assertSame(Category.START, g.categories.get(0));
+		for(int i = 0; i < g.categories.size(); i++) {
+			Assert.assertEquals(i, g.categories.get(i).id);
+		}
+		
+		// equal to categories from other grammars
+		Grammar h = new Grammar("other");
+		Assert.assertEquals(x, h.getCategory("X", false));
+		Assert.assertNotSame(x, h.getCategory("X", false));
+		Assert.assertNull(h.lookup(Y));
+		
+		try {
+			g.getCategory("", false);
+			Assert.fail("able to get nonterminal with empty name");
+		}
+		catch(IllegalArgumentException expected) {}
+	}
+
 }
@@ -0,0 +1,150 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+
+/**
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ */
+public class ParseServerTest extends PepFixture {
+	
+	ExecutorService executor;
+	ParseServer server;
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		executor = Executors.newCachedThreadPool();
+		server = new ParseServer(new InetSocketAddress(
+				InetAddress.getByName(null), 0), executor);
+		server.addParser(new EarleyParser(grammar));
+		server.setDefaultSeed(seed);
+		server.start();
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		server.stop(0);
+		executor.shutdownNow();
+		super.tearDown();
+	}
+	
+	public final void testGrammars() throws IOException {
+		Assert.assertEquals("{\"grammars\":[\"test\"]}",
+				request("GET", "/grammars", null, 200));
+	}
+	
+	public final void testParse() throws IOException {
+		Assert.assertEquals("{\"grammar\":\"test\",\"seed\":\"S\",\"results\":"
+				+ "[{\"tokens\":[\"the\",\"boy\",\"left\"],\"status\":\"ACCEPT\","
+				+ "\"count\":1,\"trees\":"
+				+ "[\"[S[NP[Det[the]][N[boy]]][VP[left]]]\"]}]}",
+				request("GET", "/parse?tokens=the+boy+left", null, 200));
+		
+		String batch = request("POST", "/parse?grammar=test&seed=S&trees=0",
+				"the boy left\nboy left\n\n", 200);
+		Assert.assertTrue(batch, batch.contains(
+				"\"status\":\"ACCEPT\",\"count\":1,\"trees\":[]}"));
+		Assert.assertTrue(batch, batch.contains(
+				"{\"tokens\":[\"boy\",\"left\"],\"status\":\"REJECT\""));
+		Assert.assertTrue(batch, batch.contains(
+				"{\"tokens\":[],\"status\":\"ERROR\",\"count\":0,\"trees\":[],"
+				+ "\"error\":\"null or empty tokens\"}"));
+	}
+	
+	public final void testErrors() throws IOException {
+		request("GET", "/parse?grammar=none&tokens=the", null, 404);
+		request("GET", "/parse", null, 400);
+		request("GET", "/parse?tokens=the&trees=x", null, 400);
+		request("DELETE", "/parse?tokens=the", null, 405);
+		
+		Assert.assertEquals("{\"error\":\"empty seed category\"}",
+				request("GET", "/parse?seed=&tokens=the", null, 400));
+		request("GET", "/parse?seed=+&tokens=the", null, 400);
+		request("GET", "/parse?tokens=%zz", null, 400);
+		try {
+			ParseServer.parameters("tokens=%zz");
+			Assert.fail("decoded malformed escape");
+		}
+		catch(IllegalArgumentException expected) {
+			// answered with a 400 error
+		}
+		
+		server.addParser(new EarleyParser(grammar) {
+			@Override
+			public Parse parse(Iterable<String> tokens, Category seed,
+					ParseWorkspace workspace) {
+				throw new IllegalStateException("broken");
+			}
+		});
+		Assert.assertEquals("{\"error\":\"internal error: "
+				+ "java.lang.IllegalStateException: broken\"}",
+				request("GET", "/parse?tokens=the", null, 500));
+		
+		server.setDefaultSeed(null);
+		Assert.assertEquals("{\"error\":\"no seed category specified\"}",
+				request("GET", "/parse?tokens=the", null, 400));
+	}
+	
+	public final void testAppendString() {
+		StringBuilder sb = new StringBuilder();
+		ParseServer.appendString(sb, "a\"b\\c\n\u0001");
+		Assert.assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", sb.toString());
+	}
+	
+	/**
+	 * Makes a request of the server, checking its response code.
+	 * @return The body of the response.
+	 */
+	private String request(String method, String path, String body,
+			int code) throws IOException {
+		InetSocketAddress a = server.getAddress();
+		HttpURLConnection c = (HttpURLConnection)new URL("http",
+				a.getAddress().getHostAddress(), a.getPort(), path)
+					.openConnection();
+		c.setRequestMethod(method);
+		if(body != null) {
+			c.setDoOutput(true);
+			OutputStream out = c.getOutputStream();
+			out.write(body.getBytes("UTF-8"));
+			out.close();
+		}
+		
+		Assert.assertEquals(path, code, c.getResponseCode());
+		InputStream in = (code == 200) ? c.getInputStream()
+			: c.getErrorStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while((n = in.read(buffer)) > 0) {
+			bytes.write(buffer, 0, n);
+		}
+		
+		in.close();
+		c.disconnect();
+		return bytes.toString("UTF-8");
+	}
+}
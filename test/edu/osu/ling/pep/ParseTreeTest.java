@@ -10,8 +10,11 @@
  */
 package edu.osu.ling.pep;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -146,6 +149,206 @@ public class ParseTreeTest extends PepFixture {
 		Assert.assertEquals(VP, sChildren[1].getNode());
 	}
 	
+	public final void testPackForest() throws PepException {
+		EarleyParser parser = new EarleyParser(grammar);
+		parser.setOption(ParserOption.PACK_FOREST, Boolean.TRUE);
+		Parse packed = parser.parse(tokens, S);
+		
+		Assert.assertEquals(Status.ACCEPT, packed.getStatus());
+		Assert.assertEquals(parseTrees, packed.getParseTrees());
+		Assert.assertEquals(parse.getParseTreesFor(VP, 1, 4),
+				packed.getParseTreesFor(VP, 1, 4));
+		
+		parser.setOption(ParserOption.LEO_RIGHT_RECURSION, Boolean.TRUE);
+		Assert.assertEquals(parseTrees, parser.parse(tokens, S).getParseTrees());
+		
+		// one edge for S -> NP VP over both VPs spanning "saw her duck"
+		int sCount = 0;
+		for(Edge edge : packed.chart.getEdges(4)) {
+			if(edge.origin == 0 && edge.isPassive()
+					&& edge.dottedRule.left.equals(S)) {
+				sCount++;
+				Assert.assertEquals(2, edge.getDerivations().size());
+			}
+		}
+		
+		Assert.assertEquals(1, sCount);
+		Assert.assertTrue(packed.chart.countEdges() < parse.chart.countEdges());
+		
+		// ambiguity grows exponentially, the packed chart does not
+		Grammar g = new Grammar("g");
+		g.addRule(new Rule(S, S, S));
+		g.addRule(new Rule(S, he));
+		
+		List<String> t = new ArrayList<String>();
+		for(int i = 0; i < 6; i++) {
+			t.add("he");
+		}
+		
+		parser = new EarleyParser(g);
+		Set<ParseTree> trees = parser.parse(t, S).getParseTrees();
+		Assert.assertEquals(42, trees.size()); // Catalan number C(5)
+		
+		parser.setOption(ParserOption.PACK_FOREST, Boolean.TRUE);
+		Assert.assertEquals(trees, parser.parse(t, S).getParseTrees());
+		
+		// cyclic grammar
+		g.addRule(new Rule(S, NP));
+		g.addRule(new Rule(NP, S));
+		Assert.assertTrue(parser.parse(t, S).getParseTrees().containsAll(trees));
+	}
+	
+	public final void testIterator() throws PepException {
+		Set<ParseTree> iterated = new HashSet<ParseTree>();
+		for(ParseTree pt : parse) {
+			Assert.assertNull(pt.getParent());
+			iterated.add(pt);
+		}
+		
+		Assert.assertEquals(parseTrees, iterated);
+		
+		Grammar g = new Grammar("g");
+		g.addRule(new Rule(S, S, S));
+		g.addRule(new Rule(S, he));
+		
+		List<String> t = new ArrayList<String>();
+		for(int i = 0; i < 6; i++) {
+			t.add("he");
+		}
+		
+		EarleyParser parser = new EarleyParser(g);
+		for(Boolean packed : new Boolean[] {Boolean.FALSE, Boolean.TRUE}) {
+			parser.setOption(ParserOption.PACK_FOREST, packed);
+			Parse p = parser.parse(t, S);
+			List<ParseTree> trees = new ArrayList<ParseTree>();
+			for(Iterator<ParseTree> i = p.iterator(); i.hasNext();) {
+				trees.add(i.next());
+			}
+			
+			Assert.assertEquals(42, trees.size());
+			Assert.assertEquals(p.getParseTrees(),
+					new HashSet<ParseTree>(trees));
+			Assert.assertEquals(p.getParseTreesFor(S, 1, 4),
+					new HashSet<ParseTree>(ParseTreeTest.list(
+							p.iterateParseTreesFor(S, 1, 4))));
+		}
+		
+		// only the first tree is made
+		Iterator<ParseTree> i = parser.parse(t, S).iterator();
+		Assert.assertTrue(i.hasNext());
+		Assert.assertEquals(S, i.next().getNode());
+		
+		// cyclic grammar
+		g.addRule(new Rule(S, NP));
+		g.addRule(new Rule(NP, S));
+		Parse cyclic = parser.parse(t, S);
+		Assert.assertTrue(ParseTreeTest.list(cyclic.iterator()).containsAll(
+				cyclic.getParseTrees()));
+		
+		Parse error = new Parse(S, new Chart(), true);
+		Assert.assertFalse(error.iterator().hasNext());
+	}
+	
+	public final void testCountParseTrees() throws PepException {
+		Assert.assertEquals(parseTrees.size(),
+				parse.countParseTrees().intValue());
+		Assert.assertEquals(parse.getParseTreesFor(VP, 1, 4).size(),
+				parse.countParseTreesFor(VP, 1, 4).intValue());
+		Assert.assertEquals(BigInteger.ZERO,
+				parse.countParseTreesFor(NP, 0, 4));
+		
+		Grammar g = new Grammar("g");
+		g.addRule(new Rule(S, S, S));
+		g.addRule(new Rule(S, he));
+		
+		List<String> t = new ArrayList<String>();
+		for(int i = 0; i < 6; i++) {
+			t.add("he");
+		}
+		
+		EarleyParser parser = new EarleyParser(g);
+		Parse p = parser.parse(t, S);
+		Assert.assertEquals(BigInteger.valueOf(42), p.countParseTrees());
+		Assert.assertTrue(p.toString().endsWith("(42)"));
+		
+		// Catalan number C(n - 1), far too many trees to create
+		parser.setOption(ParserOption.PACK_FOREST, Boolean.TRUE);
+		for(int i = 6; i < 60; i++) {
+			t.add("he");
+		}
+		
+		BigInteger catalan = BigInteger.ONE;
+		for(int n = 1; n < t.size(); n++) { // C(n) = C(n - 1) 2(2n - 1)/(n + 1)
+			catalan = catalan.multiply(BigInteger.valueOf(2 * (2 * n - 1)))
+				.divide(BigInteger.valueOf(n + 1));
+		}
+		
+		Assert.assertEquals(catalan, parser.parse(t, S).countParseTrees());
+		Assert.assertEquals(BigInteger.ZERO,
+				new Parse(S, new Chart(), true).countParseTrees());
+	}	
+	/**
+	 * Tests that trees much deeper than the call stack could hold are built,
+	 * compared, and printed.
+	 */
+	public final void testDeepTrees() throws PepException {
+		Grammar g = new Grammar("g");
+		g.addRule(new Rule(S, S, he)); // left recursion keeps the chart small
+		g.addRule(new Rule(S, he));
+		
+		List<String> t = new ArrayList<String>();
+		for(int i = 0; i < 20000; i++) {
+			t.add("he");
+		}
+		
+		EarleyParser parser = new EarleyParser(g);
+		Parse p = parser.parse(t, S);
+		Set<ParseTree> trees = p.getParseTrees();
+		Assert.assertEquals(1, trees.size());
+		Assert.assertEquals(BigInteger.ONE, p.countParseTrees());
+		
+		ParseTree tree = trees.iterator().next();
+		Assert.assertEquals(tree, ParseTree.newParseTree(
+				p.getCompletedEdges(S, 0, t.size()).get(0)));
+		Assert.assertTrue(tree.toString().startsWith("[S[S[S[S"));
+		Assert.assertTrue(tree.toString().endsWith("[he]][he]][he]]"));
+		
+		Assert.assertEquals(trees,
+				new HashSet<ParseTree>(ParseTreeTest.list(p.iterator())));
+		
+		parser.setOption(ParserOption.PACK_FOREST, Boolean.TRUE);
+		Assert.assertEquals(trees, parser.parse(t, S).getParseTrees());
+		
+		// right recursion, with the trees taken one at a time
+		g = new Grammar("g");
+		g.addRule(new Rule(S, he, S));
+		g.addRule(new Rule(S, he));
+		parser = new EarleyParser(g);
+		parser.setOption(ParserOption.LEO_RIGHT_RECURSION, Boolean.TRUE);
+		
+		p = parser.parse(t, S);
+		List<ParseTree> iterated = new ArrayList<ParseTree>();
+		for(ParseTree pt : p) {
+			iterated.add(pt);
+		}
+		
+		Assert.assertEquals(1, iterated.size());
+		Assert.assertTrue(iterated.get(0).toString().startsWith(
+				"[S[he][S[he][S"));
+		Assert.assertEquals(p.getParseTrees(),
+				new HashSet<ParseTree>(iterated));
+	}
+	
+	
+	private static List<ParseTree> list(Iterator<ParseTree> trees) {
+		List<ParseTree> l = new ArrayList<ParseTree>();
+		while(trees.hasNext()) {
+			l.add(trees.next());
+		}
+		
+		return l;
+	}
+	
 	/**
 	 * Test method for {@link edu.osu.ling.pep.ParseTree#getNode()}.
 	 */
@@ -10,7 +10,12 @@
  */
 package edu.osu.ling.pep;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.util.EnumMap;
 
 import junit.framework.Assert;
@@ -50,6 +55,63 @@ public class PepTest extends PepFixture {
 		}
 	}
 	
+	public final void testBatch() throws IOException {
+		File input = File.createTempFile("pep", ".txt");
+		input.deleteOnExit();
+		PrintWriter w = new PrintWriter(new FileWriter(input));
+		String[] lines = {"the boy left", "boy the left", "", " the  boy left"};
+		for(String l : lines) {
+			w.println(l);
+		}
+		w.close();
+		
+		PrintStream out = System.out;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(bytes, true));
+		System.err.print("expecting ERROR: ");
+		try {
+			Pep.main(new String[] {"-g", "./samples/miniscule.xml", "-s", "S",
+				"-t", "2", "-b", input.getPath()});
+		}
+		finally {
+			System.setOut(out);
+		}
+		
+		String[] results = bytes.toString().split("\r?\n");
+		Assert.assertEquals(lines.length, results.length);
+		String[] statuses = {"ACCEPT", "REJECT", "ERROR", "ACCEPT"};
+		for(int i = 0; i < lines.length; i++) {
+			String[] fields = results[i].split("\t", -1);
+			Assert.assertEquals(results[i], 4, fields.length);
+			Assert.assertEquals(statuses[i], fields[0]);
+			Assert.assertEquals(i == 0 || i == 3 ? "1" : "0", fields[1]);
+			Assert.assertTrue(Double.parseDouble(fields[2]) >= 0.0);
+			Assert.assertEquals(lines[i].trim().replaceAll("\\s+", " "),
+					fields[3]);
+		}
+	}
+	
+	public final void testCompile() throws IOException, PepException {
+		File output = File.createTempFile("pep", ".pepg", new File("."));
+		output.deleteOnExit();
+		Pep.main(new String[] {"-g", "./samples/tiny.xml",
+			"-c", output.getPath()});
+		Assert.assertTrue(BinaryGrammar.isBinary(output));
+		
+		PrintStream out = System.out;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(bytes, true));
+		try {
+			Pep.main(new String[] {"-g", output.getName(), "-s", "S",
+				"Mary", "saw", "her", "dragon", "in", "the", "cave"});
+		}
+		finally {
+			System.setOut(out);
+		}
+		
+		Assert.assertTrue(bytes.toString(), bytes.toString().contains("ACCEPT"));
+	}
+	
 	public final void testInvoke() {
 		try {
 			Runtime.getRuntime().exec(
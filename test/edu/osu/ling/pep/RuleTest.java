@@ -34,10 +34,14 @@ public class RuleTest extends PepFixture {
 		catch(IllegalArgumentException expected) {}
 		
 		try {
-			new Rule(Z, new Category[] {});
-			fail("able to create rule with empty right");
+			Rule empty = new Rule(Z, new Category[] {});
+			Assert.assertTrue(empty.isEmpty());
+			Assert.assertFalse(empty.isPreterminal());
+			Assert.assertEquals("Z ->", empty.toString());
+		}
+		catch(IllegalArgumentException problem) {
+			fail("unable to create rule with empty right");
 		}
-		catch(IllegalArgumentException expected) {}
 		
 		try {
 			new Rule(Z, a, A);
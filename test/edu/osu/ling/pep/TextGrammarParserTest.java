@@ -0,0 +1,83 @@
+/*
+ * $Id$
+ * Copyright (C) 2007 Scott Martin
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package edu.osu.ling.pep;
+
+import java.io.File;
+import java.io.StringReader;
+
+import junit.framework.Assert;
+
+
+/**
+ * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
+ * @version $LastChangedRevision$
+ */
+public class TextGrammarParserTest extends PepFixture {
+	
+	public final void testParse() throws PepException {
+		Grammar g = parse("# the fixture grammar\n"
+				+ "S -> NP VP\n"
+				+ "\n"
+				+ "NP -> Det N # a comment\n"
+				+ "VP->\"left\"\n"
+				+ "Det -> \"a\" | \"the\"\n"
+				+ "  N -> \"boy\"\n"
+				+ "     | \"girl\"\n");
+		Assert.assertEquals("test", g.getName());
+		Assert.assertEquals(grammar.getAllRules(), g.getAllRules());
+		for(int i = 0; i < grammar.categories.size(); i++) {
+			Assert.assertEquals(grammar.categories.get(i), g.categories.get(i));
+		}
+	}
+	
+	public final void testEmptyAndQuoted() throws PepException {
+		Grammar g = parse("A ->\n"
+				+ "B -> | A \"x y\" | \"\\\"\\\\\" \"\" | \n");
+		Category A = new Category("A"), B = new Category("B");
+		Assert.assertEquals(1, g.getRules(A).size());
+		Assert.assertTrue(g.getRules(A).contains(new Rule(A)));
+		
+		Assert.assertEquals(3, g.getRules(B).size()); // two empty rules
+		Assert.assertTrue(g.getRules(B).contains(new Rule(B)));
+		Assert.assertTrue(g.getRules(B).contains(
+				new Rule(B, A, new Category("x y", true))));
+		Assert.assertTrue(g.getRules(B).contains(new Rule(B,
+				new Category("\"\\", true), new Category("", true))));
+	}
+	
+	public final void testSample() throws PepException {
+		Grammar g = new TextGrammarParser(new File("samples/tiny.bnf")).parse();
+		Assert.assertEquals("tiny", g.getName());
+		Assert.assertEquals(
+				new GrammarParser(new File("samples/tiny.xml")).parse()
+					.getAllRules(),
+				g.getAllRules());
+	}
+	
+	public final void testInvalid() {
+		String[] invalid = {"S NP VP", "\"S\" -> NP", "| NP", "S -> \"NP",
+				"S -> NP -> VP", "-> NP"};
+		for(String s : invalid) {
+			try {
+				parse("\n" + s);
+				Assert.fail("parsed " + s);
+			}
+			catch(PepException expected) {
+				Assert.assertTrue(expected.getMessage(),
+						expected.getMessage().startsWith("line 2, column "));
+			}
+		}
+	}
+	
+	static Grammar parse(String text) throws PepException {
+		return new TextGrammarParser(new StringReader(text), "test").parse();
+	}
+}